@@ -1,5 +1,6 @@
 plugins {
     `java-library`
+    id("me.champeau.gradle.jmh") version "0.5.0"
 }
 
 repositories {
@@ -13,7 +14,83 @@ dependencies {
     testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine:5.6.2")
 }
 
+// The Panama backend (see NativeBackend) is compiled into the Java 22 part of a multi-release jar.
+// That needs a JDK 22 or newer, e.g. ./gradlew -Pjava22Home=/usr/lib/jvm/jdk-22 jar;
+// without it, the jar only contains the JNI backend.
+val java22Home = findProperty("java22Home") as String?
+
+val java22 by sourceSets.creating {
+    java.setSrcDirs(listOf("src/main/java22"))
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+}
+
+tasks.named<JavaCompile>(java22.compileJavaTaskName) {
+    onlyIf { java22Home != null }
+    options.isFork = true
+    options.forkOptions.javaHome = java22Home?.let { file(it) }
+    options.compilerArgs.addAll(listOf("--release", "22"))
+}
+
+tasks.jar {
+    manifest {
+        attributes("Multi-Release" to "true")
+    }
+    into("META-INF/versions/22") {
+        from(java22.output)
+    }
+}
+
 tasks.test {
     useJUnitPlatform()
     systemProperty("java.library.path", "./fluentbindings/target/debug")
 }
+
+// Runs all tests again on Java 22+, where the Panama backend is selected automatically, as part of check
+val testPanama by tasks.registering(Test::class) {
+    onlyIf { java22Home != null }
+    useJUnitPlatform()
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = files(java22.output) + sourceSets.test.get().runtimeClasspath
+    executable = "${java22Home}/bin/java"
+    jvmArgs("--enable-native-access=ALL-UNNAMED")
+    systemProperty("java.library.path", "./fluentbindings/target/debug")
+}
+
+tasks.check {
+    dependsOn(testPanama)
+}
+
+// Builds the optimised native library the benchmarks run against.
+// Cargo runs offline as well if gradle does (./gradlew --offline jmh), using the crates fetched before.
+val cargoBuildRelease by tasks.registering(Exec::class) {
+    workingDir = file("fluentbindings")
+    commandLine(listOf("cargo", "build", "--release") + if (gradle.startParameter.isOffline) listOf("--offline") else listOf())
+}
+
+jmh {
+    jmhVersion = "1.23"
+    jvmArgs = listOf("-Djava.library.path=${projectDir}/fluentbindings/target/release")
+    profilers = listOf("gc")
+    // Machine readable results to compare between commits
+    resultFormat = "JSON"
+    resultsFile = file("${buildDir}/reports/jmh/results.json")
+    // e.g. ./gradlew jmh -PjmhInclude=SnapshotLoadingBenchmark
+    findProperty("jmhInclude")?.let { include = listOf(it.toString()) }
+    // The Panama backend can only be benchmarked on Java 22+
+    if (java22Home != null) {
+        jvm = "${java22Home}/bin/java"
+        jvmArgs = jvmArgs + "--enable-native-access=ALL-UNNAMED"
+    } else {
+        exclude = listOf("PanamaBackendBenchmark")
+    }
+}
+
+if (java22Home != null) {
+    dependencies {
+        "jmhRuntimeOnly"(files(java22.output))
+    }
+}
+
+tasks.named("jmh") {
+    dependsOn(cargoBuildRelease)
+}
@@ -0,0 +1,105 @@
+use std::sync::RwLock;
+
+use fluent_bundle::{FluentArgs, FluentValue};
+use fluent_bundle::types::FluentNumber;
+use jni::JNIEnv;
+use jni::objects::{JObject, JString};
+use jni::sys::{jdouble, jlong};
+
+use crate::{get_rust_pointer, try_from_pointer, javastr_to_ruststr, surrender_rust_pointer};
+use crate::value::get_options;
+
+// The Rust counterpart of a Java FluentArgs object. FluentArgs borrows its keys,
+// so they are owned by this struct and only handed out as references.
+pub(crate) struct Args {
+    // Declared before the keys so that it is dropped first
+    map: FluentArgs<'static>,
+    keys: Vec<Box<str>>,
+}
+
+impl Args {
+    fn insert(&mut self, key: String, value: FluentValue<'static>) {
+        if let Some(slot) = self.map.get_mut(key.as_str()) {
+            *slot = value;
+            return
+        }
+        let key = key.into_boxed_str();
+        // The str does not move when the Box does and lives as long as self.
+        let key_ref: &'static str = unsafe { &*(&*key as *const str) };
+        self.keys.push(key);
+        self.map.insert(key_ref, value);
+    }
+
+    fn clear(&mut self) {
+        self.map.clear();
+        self.keys.clear();
+    }
+}
+
+// Returns None without calling f if the arguments have been closed
+pub(crate) fn with_args<R, F>(env: &JNIEnv, args: JObject, f: F) -> Option<R>
+    where F: FnOnce(&FluentArgs) -> R {
+    let args = get_rust_pointer::<RwLock<Args>>(env, &args)?.read().unwrap();
+    Some(f(&args.map))
+}
+
+// Like with_args for the C exports. Returns Err(true) if the arguments have been closed and Err(false)
+// instead of calling f if they contain values implemented in Java, which may throw while being formatted
+// and can therefore only be formatted through JNI
+pub(crate) fn with_native_args<R, F>(pointer: jlong, f: F) -> Result<R, bool>
+    where F: FnOnce(&FluentArgs) -> R {
+    let args = match try_from_pointer::<RwLock<Args>>(pointer) {
+        Some(args) => args.read().unwrap(),
+        None => return Err(true)
+    };
+    if args.map.iter().any(|(_, value)| matches!(value, FluentValue::Custom(_))) {
+        Err(false)
+    } else {
+        Ok(f(&args.map))
+    }
+}
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_FluentArgs_bind(
+    env: JNIEnv,
+    this: JObject,
+) {
+    let args = Args { map: FluentArgs::new(), keys: Vec::new() };
+    surrender_rust_pointer(&env, &this, RwLock::new(args));
+}
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_FluentArgs_insertRs(
+    env: JNIEnv,
+    this: JObject,
+    key: JString,
+    value: JObject,
+) {
+    let key = javastr_to_ruststr(&env, key);
+    let value = or_return!(get_rust_pointer::<FluentValue>(&env, &value)).clone();
+    or_return!(get_rust_pointer::<RwLock<Args>>(&env, &this)).write().unwrap().insert(key, value);
+}
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_FluentArgs_insertNumberRs(
+    env: JNIEnv,
+    this: JObject,
+    key: JString,
+    value: jdouble,
+    options: JObject,
+) {
+    let key = javastr_to_ruststr(&env, key);
+    let value = FluentValue::Number(FluentNumber {
+        value,
+        options: or_return!(get_options(&env, &options)),
+    });
+    or_return!(get_rust_pointer::<RwLock<Args>>(&env, &this)).write().unwrap().insert(key, value);
+}
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_FluentArgs_clearRs(
+    env: JNIEnv,
+    this: JObject,
+) {
+    or_return!(get_rust_pointer::<RwLock<Args>>(&env, &this)).write().unwrap().clear();
+}
@@ -1,32 +1,156 @@
-use std::collections::HashMap;
+use std::borrow::Cow;
+use std::cell::RefCell;
+use std::collections::HashSet;
+use std::ops::{Deref, DerefMut};
 use std::ptr::null_mut;
+use std::sync::RwLock;
 
-use fluent_bundle::{FluentArgs, FluentError, FluentResource, FluentValue};
-use fluent_bundle::concurrent::FluentBundle;
+use fluent_bundle::{FluentArgs, FluentError, FluentResource};
+use fluent_syntax::ast::{Entry, Expression, InlineExpression, Pattern, PatternElement, ResourceEntry};
 use jni::JNIEnv;
-use jni::objects::{JList, JMap, JObject, JString};
-use jni::sys::{jboolean, jobject};
+use jni::objects::{JByteBuffer, JClass, JObject, JString};
+use jni::sys::{jboolean, jbyte, jbyteArray, jcharArray, jint, jlong, jlongArray, jobject, jobjectArray};
 use unic_langid::LanguageIdentifier;
 
-use crate::{get_rust_pointer, javastr_to_ruststr, locale_to_langid, surrender_rust_pointer, throw_format_exception, throw_override_exception, throw_parse_exception};
+use crate::{FfiString, ffi_str, format_error_messages, get_rust_pointer, try_from_pointer, javastr_to_ruststr, list_elements, locale_to_langid, new_string_array, surrender_rust_pointer, throw_format_exception, throw_override_exception};
+use crate::ids::{class, ids};
+use crate::memoizer::{FluentBundle, new_bundle};
+use crate::args::{with_args, with_native_args};
+use crate::resource::{create_resource, parse_array, parse_buffer, take_resource, Resource};
+use crate::stats::{ast_size, BundleUsage};
+
+pub(crate) struct Bundle {
+    inner: FluentBundle<FluentResource>,
+    // Incremented whenever messages may have been replaced, so that anything
+    // that holds on to resolved messages knows when to resolve them again.
+    pub(crate) generation: u64,
+    // FluentBundle can only tell whether it has a message, lazy resources also need to know about terms
+    terms: HashSet<String>,
+    // Messages added since Java last took them, see export_template
+    templates: Vec<Vec<String>>,
+    usage: BundleUsage,
+    // Java functions may throw, which only the JNI functions can report
+    pub(crate) java_functions: bool,
+}
+
+impl Bundle {
+    fn add(&mut self, resource: Resource, do_override: bool) -> Result<(), Vec<FluentError>> {
+        let Resource { inner: resource, source_bytes } = resource;
+        let mut templates = vec![];
+        let terms = self.terms.len();
+        let mut new_messages = HashSet::new();
+        for entry in &resource.ast().body {
+            match entry {
+                ResourceEntry::Entry(Entry::Term(term)) => {
+                    self.terms.insert(term.id.name.to_owned());
+                }
+                ResourceEntry::Entry(Entry::Message(message)) => {
+                    if !self.inner.has_message(message.id.name) {
+                        new_messages.insert(message.id.name);
+                    }
+                    templates.push(export_template(message.id.name, message.value.as_ref()));
+                }
+                _ => {}
+            }
+        }
+        let new_messages = new_messages.len();
+        let new_terms = self.terms.len() - terms;
+        let ast_bytes = ast_size(&resource);
+        self.usage.record(new_messages, new_terms, source_bytes, ast_bytes);
+        let result = if do_override {
+            self.inner.add_resource_overriding(resource);
+            self.generation += 1;
+            Ok(())
+        } else {
+            self.inner.add_resource(resource)
+        };
+        if let Err(errors) = &result {
+            // Messages that were rejected keep their previous definition
+            let rejected: HashSet<&str> = errors.iter()
+                .filter_map(|error| match error {
+                    FluentError::Overriding { id, .. } => Some(id.as_str()),
+                    _ => None
+                })
+                .collect();
+            templates.retain(|template| !rejected.contains(template[0].as_str()));
+        }
+        self.templates.append(&mut templates);
+        result
+    }
+}
+
+// The resolver only ever reports errors for more placeables than this
+const MAX_PLACEABLES: usize = 100;
+
+// Exports a message for the Java side: [id, kinds, elements...] if its value only consists of
+// text and variable references, where kinds has a 'T' for each text and a 'V' for each variable,
+// or just [id] if it has to be formatted by fluent.
+fn export_template(id: &str, value: Option<&Pattern<&str>>) -> Vec<String> {
+    let mut template = vec![id.to_owned()];
+    let pattern = match value {
+        Some(pattern) if pattern.elements.len() <= MAX_PLACEABLES => pattern,
+        _ => return template
+    };
+    let mut kinds = String::with_capacity(pattern.elements.len());
+    let mut elements = Vec::with_capacity(pattern.elements.len());
+    for element in &pattern.elements {
+        match element {
+            PatternElement::TextElement(text) => {
+                kinds.push('T');
+                elements.push(text.to_string());
+            }
+            PatternElement::Placeable(Expression::InlineExpression(
+                InlineExpression::VariableReference { id }
+            )) => {
+                kinds.push('V');
+                elements.push(id.name.to_owned());
+            }
+            _ => return template
+        }
+    }
+    template.push(kinds);
+    template.append(&mut elements);
+    template
+}
+
+impl Deref for Bundle {
+    type Target = FluentBundle<FluentResource>;
+
+    fn deref(&self) -> &Self::Target {
+        &self.inner
+    }
+}
+
+impl DerefMut for Bundle {
+    fn deref_mut(&mut self) -> &mut Self::Target {
+        &mut self.inner
+    }
+}
 
 #[no_mangle]
 pub extern "system" fn Java_io_github_javidaloca_FluentBundle_bind(
     env: JNIEnv,
     this: JObject,
     locales: JObject,
+    share_formatters: jboolean,
 ) {
     let mut lang_ids: Vec<LanguageIdentifier> = Vec::new();
-    let locales = JList::from_env(&env, locales).unwrap();
-    for locale in locales.iter().unwrap() {
+    for locale in list_elements(&env, locales) {
         if let Some(lang_id) = locale_to_langid(&env, locale) {
             lang_ids.push(lang_id);
         } else {
             return
         }
     }
-    let bundle: FluentBundle<FluentResource> = FluentBundle::new(lang_ids.iter());
-    surrender_rust_pointer(&env, &this, bundle);
+    let bundle = Bundle {
+        inner: new_bundle(&lang_ids, share_formatters != 0),
+        generation: 0,
+        terms: HashSet::new(),
+        templates: vec![],
+        usage: BundleUsage::new(),
+        java_functions: false,
+    };
+    surrender_rust_pointer(&env, &this, RwLock::new(bundle));
 }
 
 #[no_mangle]
@@ -36,48 +160,140 @@ pub extern "system" fn Java_io_github_javidaloca_FluentBundle_addResourceRs(
     resource: JString,
     do_override: jboolean
 ) {
-    if let Some(resource) = create_resource(&env, resource) {
-        let mut bundle = get_rust_pointer::<FluentBundle<FluentResource>>(&env, &this);
-        if do_override == 1 {
-            bundle.add_resource_overriding(resource);
-        } else {
-            if let Err(errors) = bundle.add_resource(resource) {
-                throw_override_exception(&env, errors);
+    let source = javastr_to_ruststr(&env, resource);
+    if let Some(resource) = create_resource(&env, source, || resource) {
+        add_resource(&env, &this, resource, do_override == 1);
+    }
+}
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_FluentBundle_addResourceArrayRs(
+    env: JNIEnv,
+    this: JObject,
+    resource: jbyteArray,
+    offset: jint,
+    length: jint,
+    do_override: jboolean
+) {
+    if let Some(resource) = parse_array(&env, resource, offset, length) {
+        add_resource(&env, &this, resource, do_override == 1);
+    }
+}
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_FluentBundle_addResourceBufferRs(
+    env: JNIEnv,
+    this: JObject,
+    resource: JObject,
+    position: jint,
+    remaining: jint,
+    do_override: jboolean
+) {
+    if let Some(resource) = parse_buffer(&env, resource, position, remaining) {
+        add_resource(&env, &this, resource, do_override == 1);
+    }
+}
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_FluentBundle_addResourcesRs(
+    env: JNIEnv,
+    this: JObject,
+    resources: jobjectArray,
+    do_override: jboolean
+) {
+    let count = env.get_array_length(resources).unwrap();
+    let mut parsed = Vec::with_capacity(count as usize);
+    for i in 0..count {
+        let resource = env.get_object_array_element(resources, i).unwrap();
+        parsed.push(or_return!(take_resource(&env, &resource)));
+        env.delete_local_ref(resource).unwrap();
+    }
+    // All resources are added under one lock, in order, and override errors are collected
+    // so that they can be reported together.
+    let mut errors = vec![];
+    {
+        let mut bundle = or_return!(get_bundle(&env, &this)).write().unwrap();
+        for resource in parsed {
+            if let Err(mut resource_errors) = bundle.add(resource, do_override == 1) {
+                errors.append(&mut resource_errors);
             }
         }
     }
+    if !errors.is_empty() {
+        throw_override_exception(&env, errors);
+    }
 }
 
-fn create_resource(env: &JNIEnv, source: JString) -> Option<FluentResource> {
-    let rust_source = javastr_to_ruststr(env, source);
-    let result = FluentResource::try_new(rust_source);
-    match result {
-        Ok(resource) => Some(resource),
-        Err((_, errors)) => {
-            throw_parse_exception(env, source, errors);
-            None
-        }
+fn add_resource(env: &JNIEnv, this: &JObject, resource: Resource, do_override: bool) {
+    // Parsing happens before the write lock is taken so that readers are only blocked
+    // for the time it takes to insert the new entries.
+    let result = or_return!(get_bundle(env, this)).write().unwrap().add(resource, do_override);
+    if let Err(errors) = result {
+        throw_override_exception(env, errors);
     }
 }
 
+// Returns None if the bundle has been closed
+pub(crate) fn get_bundle<'a>(env: &JNIEnv, this: &JObject<'a>) -> Option<&'a RwLock<Bundle>> {
+    get_rust_pointer::<RwLock<Bundle>>(env, this)
+}
+
 #[no_mangle]
 pub extern "system" fn Java_io_github_javidaloca_FluentBundle_hasMessageRs(
     env: JNIEnv,
     this: JObject,
     id: JString,
 ) -> jboolean {
-    let bundle = get_rust_pointer::<FluentBundle<FluentResource>>(&env, &this);
     let id = javastr_to_ruststr(&env, id);
+    let bundle = or_return!(get_bundle(&env, &this)).read().unwrap();
     bundle.has_message(&id).into()
 }
 
 #[no_mangle]
-pub extern "system" fn Java_io_github_javidaloca_FluentBundle_setUseIsolating(
+pub extern "system" fn Java_io_github_javidaloca_FluentBundle_hasTermRs(
+    env: JNIEnv,
+    this: JObject,
+    id: JString,
+) -> jboolean {
+    let id = javastr_to_ruststr(&env, id);
+    let bundle = or_return!(get_bundle(&env, &this)).read().unwrap();
+    bundle.terms.contains(&id).into()
+}
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_FluentBundle_statisticsRs(
+    env: JNIEnv,
+    this: JObject,
+) -> jlongArray {
+    or_return!(get_bundle(&env, &this), null_mut()).read().unwrap().usage.to_java(&env)
+}
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_FluentBundle_takeTemplatesRs(
+    env: JNIEnv,
+    this: JObject,
+) -> jobjectArray {
+    let templates = {
+        let mut bundle = or_return!(get_bundle(&env, &this), null_mut()).write().unwrap();
+        std::mem::replace(&mut bundle.templates, vec![])
+    };
+    let array = env.new_object_array(templates.len() as jint, class(&ids().string_array), JObject::null())
+        .unwrap();
+    for (i, template) in templates.iter().enumerate() {
+        let strings = new_string_array(&env, template.iter().map(String::as_str));
+        env.set_object_array_element(array, i as jint, strings).unwrap();
+        env.delete_local_ref(JObject::from(strings)).unwrap();
+    }
+    array
+}
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_FluentBundle_setUseIsolatingRs(
     env: JNIEnv,
     this: JObject,
     use_isolating: jboolean
 ) {
-    let mut bundle = get_rust_pointer::<FluentBundle<FluentResource>>(&env, &this);
+    let mut bundle = or_return!(get_bundle(&env, &this)).write().unwrap();
     bundle.set_use_isolating(use_isolating == 1);
 }
 
@@ -88,33 +304,325 @@ pub extern "system" fn Java_io_github_javidaloca_FluentBundle_formatMessageRs(
     java_id: JString,
     args: JObject,
 ) -> jobject {
-    let bundle = get_rust_pointer::<FluentBundle<FluentResource>>(&env, &this);
     let id = javastr_to_ruststr(&env, java_id);
-    // Everything about this is terrible and I'm sorry you have to witness it.
-    let args = JMap::from_env(&env, args).unwrap();
-    let mut args_map = HashMap::<String, FluentValue>::new();
-    for (key, value) in args.iter().unwrap() {
-        let key = javastr_to_ruststr(&env, JString::from(key));
-        let fluent_value = get_rust_pointer::<FluentValue>(&env, &value).clone();
-        args_map.insert(key, fluent_value);
-    }
-    let mut ids = Vec::<String>::new();
-    for (id, _) in args_map.iter() {
-        ids.push(id.to_owned());
-    }
-    let mut fluent_args = FluentArgs::new();
-    for id in ids.iter() {
-        fluent_args.insert(id, args_map.remove(id).unwrap());
-    }
-    match bundle.get_message(&id) {
-        Some(message) => {
-            let mut errors: Vec<FluentError> = vec![];
-            let result = bundle.format_pattern(
-                message.value.unwrap(), Some(&fluent_args), &mut errors);
-            if !errors.is_empty() {
-                throw_format_exception(&env, java_id, errors);
-                return null_mut()
+    let bundle = or_return!(get_bundle(&env, &this), null_mut());
+    let result = with_args(&env, args, |fluent_args| {
+        // Formatting never mutates the bundle, so any number of threads may do it at the same time.
+        let bundle = bundle.read().unwrap();
+        // Messages that only consist of attributes are treated like missing messages
+        match bundle.get_message(&id).and_then(|message| message.value) {
+            Some(pattern) => format_to_java(&env, &bundle, pattern, fluent_args, java_id),
+            None => null_mut()
+        }
+    });
+    result.unwrap_or(null_mut())
+}
+
+const FFI_MISSING: i32 = 0;
+const FFI_FORMATTED: i32 = 1;
+const FFI_FAILED: i32 = 2;
+const FFI_UNSUPPORTED: i32 = 3;
+const FFI_CLOSED: i32 = 4;
+
+// C export of formatMessageRs. Writes the message, or the errors separated by line breaks,
+// to result. Messages that could call into Java are left to formatMessageRs.
+#[no_mangle]
+pub extern "C" fn javidaloca_format_message(
+    bundle: jlong,
+    id: *const u8,
+    id_length: usize,
+    args: jlong,
+    result: *mut FfiString,
+) -> i32 {
+    let bundle = match try_from_pointer::<RwLock<Bundle>>(bundle) {
+        Some(bundle) => bundle,
+        None => return FFI_CLOSED
+    };
+    let id = ffi_str(id, id_length);
+    let status = with_native_args(args, |fluent_args| {
+        let bundle = bundle.read().unwrap();
+        if bundle.java_functions {
+            return (FFI_UNSUPPORTED, None);
+        }
+        let pattern = match bundle.get_message(&id).and_then(|message| message.value) {
+            Some(pattern) => pattern,
+            None => return (FFI_MISSING, None)
+        };
+        let mut errors: Vec<FluentError> = vec![];
+        let formatted = bundle.format_pattern(pattern, Some(fluent_args), &mut errors);
+        if errors.is_empty() {
+            (FFI_FORMATTED, Some(formatted.into_owned()))
+        } else {
+            (FFI_FAILED, Some(format_error_messages(errors).join("\n")))
+        }
+    });
+    match status {
+        Ok((status, string)) => {
+            if let Some(string) = string {
+                unsafe { *result = FfiString::new(string) };
             }
+            status
+        }
+        Err(true) => FFI_CLOSED,
+        Err(false) => FFI_UNSUPPORTED
+    }
+}
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_FluentBundle_formatAttributeRs(
+    env: JNIEnv,
+    this: JObject,
+    java_id: JString,
+    attribute: JString,
+    args: JObject,
+) -> jobject {
+    let id = javastr_to_ruststr(&env, java_id);
+    let attribute = javastr_to_ruststr(&env, attribute);
+    let bundle = or_return!(get_bundle(&env, &this), null_mut());
+    let result = with_args(&env, args, |fluent_args| {
+        let bundle = bundle.read().unwrap();
+        let pattern = bundle.get_message(&id)
+            .and_then(|message| message.attributes.get(attribute.as_str()).copied());
+        match pattern {
+            Some(pattern) => format_to_java(&env, &bundle, pattern, fluent_args, java_id),
+            None => null_mut()
+        }
+    });
+    result.unwrap_or(null_mut())
+}
+
+// Returns [value, name, value, name, value, ...] with a null value if the message has none,
+// or null if the message does not exist.
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_FluentBundle_formatWithAttributesRs(
+    env: JNIEnv,
+    this: JObject,
+    java_id: JString,
+    args: JObject,
+) -> jobjectArray {
+    let id = javastr_to_ruststr(&env, java_id);
+    let bundle = or_return!(get_bundle(&env, &this), null_mut());
+    let result = with_args(&env, args, |fluent_args| {
+        let bundle = bundle.read().unwrap();
+        let message = match bundle.get_message(&id) {
+            Some(message) => message,
+            None => return null_mut()
+        };
+        let mut errors: Vec<FluentError> = vec![];
+        let value = message.value
+            .map(|pattern| bundle.format_pattern(pattern, Some(fluent_args), &mut errors));
+        let attributes: Vec<(&str, Cow<str>)> = message.attributes.iter()
+            .map(|(name, pattern)| (*name, bundle.format_pattern(pattern, Some(fluent_args), &mut errors)))
+            .collect();
+        if env.exception_check().unwrap() {
+            return null_mut();
+        }
+        if !errors.is_empty() {
+            throw_format_exception(&env, java_id, errors);
+            return null_mut();
+        }
+        let array = env.new_object_array(1 + 2 * attributes.len() as jint, class(&ids().string), JObject::null())
+            .unwrap();
+        if let Some(value) = value {
+            set_string_element(&env, array, 0, &value);
+        }
+        for (i, (name, value)) in attributes.iter().enumerate() {
+            let index = 1 + 2 * i as jint;
+            set_string_element(&env, array, index, name);
+            set_string_element(&env, array, index + 1, value);
+        }
+        array
+    });
+    result.unwrap_or(null_mut())
+}
+
+fn set_string_element(env: &JNIEnv, array: jobjectArray, index: jint, string: &str) {
+    let string = env.new_string(string).unwrap();
+    env.set_object_array_element(array, index, *string).unwrap();
+    env.delete_local_ref(*string).unwrap();
+}
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_FluentBundle_formatFirstRs(
+    env: JNIEnv,
+    _class: JClass,
+    bundles: jobjectArray,
+    java_id: JString,
+    args: JObject,
+) -> jobject {
+    let id = javastr_to_ruststr(&env, java_id);
+    let count = env.get_array_length(bundles).unwrap();
+    let result = with_args(&env, args, |fluent_args| {
+        for i in 0..count {
+            let java_bundle = env.get_object_array_element(bundles, i).unwrap();
+            // Only one bundle is locked at a time
+            let bundle = or_return!(get_bundle(&env, &java_bundle), null_mut()).read().unwrap();
+            if let Some(pattern) = bundle.get_message(&id).and_then(|message| message.value) {
+                return format_to_java(&env, &bundle, pattern, fluent_args, java_id);
+            }
+            drop(bundle);
+            env.delete_local_ref(java_bundle).unwrap();
+        }
+        null_mut()
+    });
+    result.unwrap_or(null_mut())
+}
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_FluentBundle_formatMessagesRs(
+    env: JNIEnv,
+    this: JObject,
+    ids: jobjectArray,
+    args: jobjectArray,
+    values: jobjectArray,
+    errors: jobjectArray,
+) {
+    let count = env.get_array_length(ids).unwrap();
+    let bundle = or_return!(get_bundle(&env, &this)).read().unwrap();
+    for i in 0..count {
+        // A Java function has thrown or arguments have been closed, which is thrown once control returns to Java
+        if env.exception_check().unwrap() {
+            return;
+        }
+        let java_id = env.get_object_array_element(ids, i).unwrap();
+        let java_args = env.get_object_array_element(args, i).unwrap();
+        let id = javastr_to_ruststr(&env, JString::from(java_id));
+        // Missing messages and messages without a value are reported by leaving both the value and the errors null.
+        if let Some(pattern) = bundle.get_message(&id).and_then(|message| message.value) {
+            with_args(&env, java_args, |fluent_args| {
+                let mut format_errors: Vec<FluentError> = vec![];
+                let result = bundle.format_pattern(pattern, Some(fluent_args), &mut format_errors);
+                if env.exception_check().unwrap() {
+                    return;
+                }
+                if format_errors.is_empty() {
+                    set_string_element(&env, values, i, &result);
+                } else {
+                    let messages = format_error_messages(format_errors);
+                    let messages = new_string_array(&env, messages.iter().map(String::as_str));
+                    env.set_object_array_element(errors, i, messages).unwrap();
+                    env.delete_local_ref(JObject::from(messages)).unwrap();
+                }
+            });
+        }
+        env.delete_local_ref(java_id).unwrap();
+        env.delete_local_ref(java_args).unwrap();
+    }
+}
+
+// Returned by the format*Rs functions that write into a Java buffer if the message does not exist
+const MISSING: jint = -1;
+
+thread_local! {
+    static UTF16_BUFFER: RefCell<Vec<u16>> = RefCell::new(Vec::new());
+}
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_FluentBundle_formatToCharsRs(
+    env: JNIEnv,
+    this: JObject,
+    java_id: JString,
+    args: JObject,
+    target: jcharArray,
+) -> jint {
+    format_into(&env, &this, java_id, args, |result| {
+        UTF16_BUFFER.with(|buffer| {
+            let mut buffer = buffer.borrow_mut();
+            buffer.clear();
+            buffer.extend(result.encode_utf16());
+            let capacity = env.get_array_length(target).unwrap() as usize;
+            if buffer.len() <= capacity {
+                env.set_char_array_region(target, 0, &buffer).unwrap();
+            }
+            buffer.len() as jint
+        })
+    })
+}
+
+// formatToCharsRs leaves the result in UTF16_BUFFER, so a result that did not fit can be copied
+// into a larger array without formatting the message again
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_FluentBundle_copyCharsRs(
+    env: JNIEnv,
+    _class: JClass,
+    target: jcharArray,
+) {
+    UTF16_BUFFER.with(|buffer| {
+        env.set_char_array_region(target, 0, &buffer.borrow()).unwrap();
+    });
+}
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_FluentBundle_formatToBufferRs(
+    env: JNIEnv,
+    this: JObject,
+    java_id: JString,
+    args: JObject,
+    target: JObject,
+    position: jint,
+    remaining: jint,
+) -> jint {
+    format_into(&env, &this, java_id, args, |result| {
+        let bytes = result.as_bytes();
+        if bytes.len() <= remaining as usize {
+            let buffer = env.get_direct_buffer_address(JByteBuffer::from(target)).unwrap();
+            let start = position as usize;
+            buffer[start..start + bytes.len()].copy_from_slice(bytes);
+        }
+        bytes.len() as jint
+    })
+}
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_FluentBundle_formatToArrayRs(
+    env: JNIEnv,
+    this: JObject,
+    java_id: JString,
+    args: JObject,
+    target: jbyteArray,
+    offset: jint,
+    remaining: jint,
+) -> jint {
+    format_into(&env, &this, java_id, args, |result| {
+        let bytes = result.as_bytes();
+        if bytes.len() <= remaining as usize {
+            let bytes = unsafe { &*(bytes as *const [u8] as *const [jbyte]) };
+            env.set_byte_array_region(target, offset, bytes).unwrap();
+        }
+        bytes.len() as jint
+    })
+}
+
+// Formats a message and hands the result to `write` instead of creating a Java String.
+// `write` is expected to return the length of the result in the unit of the target buffer.
+fn format_into<F>(env: &JNIEnv, this: &JObject, java_id: JString, args: JObject, write: F) -> jint
+    where F: FnOnce(&str) -> jint {
+    let id = javastr_to_ruststr(env, java_id);
+    // If an exception has been thrown, the return value does not matter
+    let bundle = or_return!(get_bundle(env, this), MISSING);
+    let result = with_args(env, args, |fluent_args| {
+        let bundle = bundle.read().unwrap();
+        let pattern = match bundle.get_message(&id).and_then(|message| message.value) {
+            Some(pattern) => pattern,
+            None => return MISSING
+        };
+        match format_checked(env, &bundle, pattern, fluent_args, java_id) {
+            Some(result) => write(&result),
+            None => MISSING
+        }
+    });
+    result.unwrap_or(MISSING)
+}
+
+pub(crate) fn format_to_java(
+    env: &JNIEnv,
+    bundle: &FluentBundle<FluentResource>,
+    pattern: &Pattern<&str>,
+    args: &FluentArgs,
+    java_id: JString,
+) -> jobject {
+    match format_checked(env, bundle, pattern, args, java_id) {
+        Some(result) => {
             let failure = format!("Failed to create Java String from {}", result);
             let result = env.new_string(result)
                 .expect(&failure);
@@ -122,4 +630,26 @@ pub extern "system" fn Java_io_github_javidaloca_FluentBundle_formatMessageRs(
         },
         None => null_mut()
     }
-}
\ No newline at end of file
+}
+
+// Formats a pattern or throws a MessageFormatException if that does not work out.
+// Returns None if an exception has been thrown.
+fn format_checked<'b>(
+    env: &JNIEnv,
+    bundle: &'b FluentBundle<FluentResource>,
+    pattern: &'b Pattern<&str>,
+    args: &'b FluentArgs,
+    java_id: JString,
+) -> Option<Cow<'b, str>> {
+    let mut errors: Vec<FluentError> = vec![];
+    let result = bundle.format_pattern(pattern, Some(args), &mut errors);
+    if env.exception_check().unwrap() {
+        // A Java function has thrown, which takes precedence
+        None
+    } else if errors.is_empty() {
+        Some(result)
+    } else {
+        throw_format_exception(env, java_id, errors);
+        None
+    }
+}
@@ -0,0 +1,121 @@
+use fluent_bundle::{FluentArgs, FluentValue};
+use jni::JNIEnv;
+use jni::objects::{GlobalRef, JObject, JString, JValue};
+use jni::signature::{JavaType, Primitive};
+use jni::sys::jint;
+
+use crate::{get_rust_pointer, javastr_to_ruststr, throw_override_exception};
+use crate::bundle::get_bundle;
+use crate::ids::{class, ids, method, static_method};
+use crate::value::JavaValue;
+
+// A Java function added to a bundle. Everything else it needs to call into Java has been
+// looked up when the library was loaded.
+struct JavaFunction {
+    function: GlobalRef,
+}
+
+impl JavaFunction {
+    fn new(env: &JNIEnv, function: JObject) -> Self {
+        JavaFunction { function: env.new_global_ref(function).unwrap() }
+    }
+
+    fn call<'a>(&self, positional: &[FluentValue<'a>], named: &FluentArgs) -> FluentValue<'a> {
+        // Functions are only ever called while Java is waiting for a format call on this thread
+        let env = ids().vm.get_env().expect("Fluent function called outside of a format call");
+        // Once a function has thrown, nothing may be called until control returns to Java
+        if env.exception_check().unwrap() {
+            return FluentValue::None;
+        }
+        let frame_size = 8 + 2 * (positional.len() + named.len()) as jint;
+        env.push_local_frame(frame_size).unwrap();
+        let result = self.call_in_frame(&env, positional, named);
+        env.pop_local_frame(JObject::null()).unwrap();
+        result
+    }
+
+    fn call_in_frame<'a>(&self, env: &JNIEnv, positional: &[FluentValue<'a>], named: &FluentArgs) -> FluentValue<'a> {
+        let ids = ids();
+        let count = (positional.len() + named.len()) as jint;
+        let values = env.new_object_array(count, class(&ids.object), JObject::null()).unwrap();
+        let names = env.new_object_array(named.len() as jint, class(&ids.string), JObject::null()).unwrap();
+        for (i, value) in positional.iter().enumerate() {
+            env.set_object_array_element(values, i as jint, self.to_java(env, value)).unwrap();
+        }
+        for (i, (name, value)) in named.iter().enumerate() {
+            env.set_object_array_element(names, i as jint, *env.new_string(name).unwrap()).unwrap();
+            let index = (positional.len() + i) as jint;
+            env.set_object_array_element(values, index, self.to_java(env, value)).unwrap();
+        }
+        let result = env.call_static_method_unchecked(
+            class(&ids.fluent_bundle), static_method(ids.fluent_bundle_call_function),
+            JavaType::Object("java/lang/Object".to_owned()),
+            &[JValue::from(*self.function.as_obj()), JValue::from(JObject::from(values)),
+                JValue::from(JObject::from(names))],
+        );
+        match result.and_then(|result| result.l()) {
+            Ok(result) if !env.exception_check().unwrap() => self.from_java(env, result),
+            // The exception is thrown once the format call returns to Java
+            _ => FluentValue::None
+        }
+    }
+
+    // Strings and numbers are passed as String and Double, custom values as the Java object
+    // they came from and anything else as null
+    fn to_java<'e>(&self, env: &JNIEnv<'e>, value: &FluentValue) -> JObject<'e> {
+        let ids = ids();
+        match value {
+            FluentValue::Custom(custom) => match custom.as_any().downcast_ref::<JavaValue>() {
+                Some(java_value) => java_value.to_local(env),
+                None => JObject::null()
+            },
+            FluentValue::String(string) => *env.new_string(string).unwrap(),
+            FluentValue::Number(number) => env.call_static_method_unchecked(
+                class(&ids.double), static_method(ids.double_value_of),
+                JavaType::Object("java/lang/Double".to_owned()), &[JValue::from(number.value)],
+            ).unwrap().l().unwrap(),
+            _ => JObject::null()
+        }
+    }
+
+    fn from_java<'a>(&self, env: &JNIEnv, result: JObject) -> FluentValue<'a> {
+        let ids = ids();
+        if result.is_null() {
+            FluentValue::None
+        } else if env.is_instance_of(result, class(&ids.string)).unwrap() {
+            javastr_to_ruststr(env, JString::from(result)).into()
+        } else if env.is_instance_of(result, class(&ids.number)).unwrap() {
+            let value = env.call_method_unchecked(
+                result, method(ids.number_double_value), JavaType::Primitive(Primitive::Double), &[],
+            ).unwrap().d().unwrap();
+            value.into()
+        } else if env.is_instance_of(result, class(&ids.fluent_value)).unwrap() {
+            // A closed value is reported once the format call returns to Java
+            match or_return!(get_rust_pointer::<FluentValue<'static>>(env, &result), FluentValue::None) {
+                // The result is only referenced by this call's local frame, which is popped before the
+                // value is formatted, so it must not be left to the weak reference of its own value
+                FluentValue::Custom(_) => FluentValue::Custom(Box::new(JavaValue::strong(env, result))),
+                value => value.clone()
+            }
+        } else {
+            FluentValue::None
+        }
+    }
+}
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_FluentBundle_addFunctionRs(
+    env: JNIEnv,
+    this: JObject,
+    name: JString,
+    function: JObject,
+) {
+    let name = javastr_to_ruststr(&env, name);
+    let function = JavaFunction::new(&env, function);
+    let mut bundle = or_return!(get_bundle(&env, &this)).write().unwrap();
+    bundle.java_functions = true;
+    let result = bundle.add_function(&name, move |positional, named| function.call(positional, named));
+    if let Err(error) = result {
+        throw_override_exception(&env, vec![error]);
+    }
+}
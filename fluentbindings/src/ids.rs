@@ -0,0 +1,180 @@
+use std::os::raw::c_void;
+
+use jni::{JavaVM, JNIEnv};
+use jni::objects::{GlobalRef, JClass, JFieldID, JMethodID, JStaticMethodID};
+use jni::sys::{jfieldID, jint, jmethodID, JNI_VERSION_1_8};
+
+// The classes, methods and fields the bindings use, looked up once when the library is loaded
+// so that no call has to look anything up by name.
+// Classes are kept as global references, which also keeps the method and field ids valid.
+pub(crate) struct Ids {
+    pub(crate) vm: JavaVM,
+    pub(crate) rust_object_pointer: jfieldID,
+
+    pub(crate) object: GlobalRef,
+    pub(crate) string: GlobalRef,
+    pub(crate) string_array: GlobalRef,
+    pub(crate) number: GlobalRef,
+    pub(crate) number_double_value: jmethodID,
+    pub(crate) double: GlobalRef,
+    pub(crate) double_value_of: jmethodID,
+    pub(crate) enum_name: jmethodID,
+    pub(crate) list_size: jmethodID,
+    pub(crate) list_get: jmethodID,
+    pub(crate) list_add: jmethodID,
+    pub(crate) array_list: GlobalRef,
+    pub(crate) array_list_new: jmethodID,
+    pub(crate) locale_get_language: jmethodID,
+    pub(crate) locale_get_script: jmethodID,
+    pub(crate) locale_get_country: jmethodID,
+    pub(crate) locale_get_variant: jmethodID,
+
+    pub(crate) fluent_bundle: GlobalRef,
+    pub(crate) fluent_bundle_call_function: jmethodID,
+    pub(crate) fluent_value: GlobalRef,
+    pub(crate) custom_value_format_for: jmethodID,
+    pub(crate) options_style: jfieldID,
+    pub(crate) options_currency: jfieldID,
+    pub(crate) options_currency_display: jfieldID,
+    pub(crate) options_use_grouping: jfieldID,
+    pub(crate) options_minimum_integer_digits: jfieldID,
+    pub(crate) options_minimum_fraction_digits: jfieldID,
+    pub(crate) options_maximum_fraction_digits: jfieldID,
+    pub(crate) options_minimum_significant_digits: jfieldID,
+    pub(crate) options_maximum_significant_digits: jfieldID,
+
+    pub(crate) invalid_locale_exception: GlobalRef,
+    pub(crate) invalid_locale_exception_new: jmethodID,
+    pub(crate) override_exception: GlobalRef,
+    pub(crate) override_exception_new: jmethodID,
+    pub(crate) override_: GlobalRef,
+    pub(crate) override_new: jmethodID,
+    pub(crate) parse_exception: GlobalRef,
+    pub(crate) parse_exception_new: jmethodID,
+    pub(crate) parse_error: GlobalRef,
+    pub(crate) parse_error_new: jmethodID,
+    pub(crate) format_exception: GlobalRef,
+    pub(crate) format_exception_new: jmethodID,
+}
+
+// Ids are plain pointers that may be used from any thread
+unsafe impl Send for Ids {}
+unsafe impl Sync for Ids {}
+
+static mut IDS: Option<Ids> = None;
+
+pub(crate) fn ids() -> &'static Ids {
+    // Only written once, by JNI_OnLoad, before any other function of the library can be called
+    unsafe { IDS.as_ref() }.expect("Library has not been loaded by the JVM")
+}
+
+pub(crate) fn class(reference: &GlobalRef) -> JClass {
+    JClass::from(reference.as_obj())
+}
+
+pub(crate) fn method<'a>(id: jmethodID) -> JMethodID<'a> {
+    JMethodID::from(id)
+}
+
+pub(crate) fn static_method<'a>(id: jmethodID) -> JStaticMethodID<'a> {
+    JStaticMethodID::from(id)
+}
+
+pub(crate) fn field<'a>(id: jfieldID) -> JFieldID<'a> {
+    JFieldID::from(id)
+}
+
+#[no_mangle]
+pub extern "system" fn JNI_OnLoad(vm: JavaVM, _reserved: *mut c_void) -> jint {
+    let env = vm.get_env().expect("JNI_OnLoad was called on a detached thread");
+    let ids = Ids::load(&env);
+    unsafe { IDS = Some(ids) };
+    JNI_VERSION_1_8
+}
+
+impl Ids {
+    // Method and field lookups initialise the classes, so no class may be used here whose
+    // initialisation calls into this library (such as FluentNumber and its DEFAULT_OPTIONS).
+    fn load(env: &JNIEnv) -> Ids {
+        let class = |name: &str| {
+            let class = env.find_class(name).unwrap_or_else(|_| panic!("Could not find {}", name));
+            env.new_global_ref(*class).unwrap()
+        };
+        let method = |class: &GlobalRef, name: &str, signature: &str| {
+            env.get_method_id(JClass::from(class.as_obj()), name, signature)
+                .unwrap_or_else(|_| panic!("Could not find method {}{}", name, signature))
+                .into_inner()
+        };
+        let static_method = |class: &GlobalRef, name: &str, signature: &str| {
+            env.get_static_method_id(JClass::from(class.as_obj()), name, signature)
+                .unwrap_or_else(|_| panic!("Could not find static method {}{}", name, signature))
+                .into_inner()
+        };
+        let field = |class: &GlobalRef, name: &str, signature: &str| {
+            env.get_field_id(JClass::from(class.as_obj()), name, signature)
+                .unwrap_or_else(|_| panic!("Could not find field {}", name))
+                .into_inner()
+        };
+
+        let rust_object = class("io/github/javidaloca/RustObject");
+        let number = class("java/lang/Number");
+        let double = class("java/lang/Double");
+        let enum_class = class("java/lang/Enum");
+        let list = class("java/util/List");
+        let array_list = class("java/util/ArrayList");
+        let locale = class("java/util/Locale");
+        let fluent_bundle = class("io/github/javidaloca/FluentBundle");
+        let custom_value = class("io/github/javidaloca/FluentCustomValue");
+        let options = class("io/github/javidaloca/FluentNumber$Options");
+        let invalid_locale_exception = class("io/github/javidaloca/InvalidLocaleException");
+        let override_exception = class("io/github/javidaloca/OverrideException");
+        let override_ = class("io/github/javidaloca/OverrideException$Override");
+        let parse_exception = class("io/github/javidaloca/ParseException");
+        let parse_error = class("io/github/javidaloca/ParseException$Error");
+        let format_exception = class("io/github/javidaloca/MessageFormatException");
+        Ids {
+            vm: env.get_java_vm().unwrap(),
+            rust_object_pointer: field(&rust_object, "pointer", "J"),
+            object: class("java/lang/Object"),
+            string: class("java/lang/String"),
+            string_array: class("[Ljava/lang/String;"),
+            number_double_value: method(&number, "doubleValue", "()D"),
+            double_value_of: static_method(&double, "valueOf", "(D)Ljava/lang/Double;"),
+            enum_name: method(&enum_class, "name", "()Ljava/lang/String;"),
+            list_size: method(&list, "size", "()I"),
+            list_get: method(&list, "get", "(I)Ljava/lang/Object;"),
+            list_add: method(&list, "add", "(Ljava/lang/Object;)Z"),
+            array_list_new: method(&array_list, "<init>", "()V"),
+            locale_get_language: method(&locale, "getLanguage", "()Ljava/lang/String;"),
+            locale_get_script: method(&locale, "getScript", "()Ljava/lang/String;"),
+            locale_get_country: method(&locale, "getCountry", "()Ljava/lang/String;"),
+            locale_get_variant: method(&locale, "getVariant", "()Ljava/lang/String;"),
+            fluent_bundle_call_function: static_method(
+                &fluent_bundle, "callFunction",
+                "(Lio/github/javidaloca/FluentFunction;[Ljava/lang/Object;[Ljava/lang/String;)Ljava/lang/Object;",
+            ),
+            fluent_value: class("io/github/javidaloca/FluentValue"),
+            custom_value_format_for: method(&custom_value, "formatFor", "(Ljava/lang/String;)Ljava/lang/String;"),
+            options_style: field(&options, "style", "Lio/github/javidaloca/FluentNumber$Style;"),
+            options_currency: field(&options, "currency", "Ljava/lang/String;"),
+            options_currency_display: field(
+                &options, "currencyDisplay", "Lio/github/javidaloca/FluentNumber$CurrencyDisplayStyle;",
+            ),
+            options_use_grouping: field(&options, "useGrouping", "Z"),
+            options_minimum_integer_digits: field(&options, "minimumIntegerDigits", "J"),
+            options_minimum_fraction_digits: field(&options, "minimumFractionDigits", "J"),
+            options_maximum_fraction_digits: field(&options, "maximumFractionDigits", "J"),
+            options_minimum_significant_digits: field(&options, "minimumSignificantDigits", "J"),
+            options_maximum_significant_digits: field(&options, "maximumSignificantDigits", "J"),
+            invalid_locale_exception_new: method(&invalid_locale_exception, "<init>", "(Ljava/util/Locale;)V"),
+            override_exception_new: method(&override_exception, "<init>", "(Ljava/util/List;)V"),
+            override_new: method(&override_, "<init>", "(Ljava/lang/String;Ljava/lang/String;)V"),
+            parse_exception_new: method(&parse_exception, "<init>", "(Ljava/lang/String;Ljava/util/List;)V"),
+            parse_error_new: method(&parse_error, "<init>", "(IILjava/lang/String;)V"),
+            format_exception_new: method(&format_exception, "<init>", "(Ljava/lang/String;Ljava/util/List;)V"),
+            number, double, array_list, fluent_bundle,
+            invalid_locale_exception, override_exception, override_,
+            parse_exception, parse_error, format_exception,
+        }
+    }
+}
@@ -1,38 +1,146 @@
-use std::sync::MutexGuard;
+use std::any::Any;
+use std::borrow::Cow;
+use std::sync::RwLock;
 
 use fluent_bundle::FluentError;
 use fluent_bundle::resolve::ResolverError;
 use fluent_syntax::parser::errors::{ErrorKind, ParserError};
 use jni::JNIEnv;
-use jni::objects::{JList, JObject, JString, JThrowable, JValue};
+use jni::objects::{JClass, JObject, JString, JThrowable, JValue};
 use jni::signature::JavaType;
 use jni::signature::Primitive;
+use jni::sys::{jlong, jmethodID, jobjectArray};
 use unic_langid::LanguageIdentifier;
 
+use crate::bundle::Bundle;
+use crate::ids::{class, field, ids, method};
+
+// Evaluates to the value of an Option or, if there is none, returns from the enclosing function
+// so that the pending Java exception is thrown. The returned value defaults to Default::default().
+macro_rules! or_return {
+    ($option:expr) => {
+        or_return!($option, Default::default())
+    };
+    ($option:expr, $default:expr) => {
+        match $option {
+            Some(value) => value,
+            None => return $default
+        }
+    };
+}
+
+mod ids;
 mod value;
+mod args;
 mod bundle;
+mod message;
+mod resource;
+mod function;
+mod memoizer;
+mod stats;
+
+// Every Rust value owned by a Java object is boxed twice: the outer box gives us a thin pointer
+// that fits into the "pointer" field, the inner one remembers the concrete type so that it can
+// be dropped correctly without knowing it at the call site.
+type RustBox = Box<dyn Any + Send>;
 
 #[no_mangle]
-pub extern "system" fn Java_io_github_javidaloca_RustObject_surrender(
-    env: JNIEnv,
-    object: JObject,
+pub extern "system" fn Java_io_github_javidaloca_RustObject_free(
+    _env: JNIEnv,
+    _class: JClass,
+    pointer: jlong,
 ) {
-    // String is just a placeholder. In reality, this is some other type,
-    // but it doesn't matter because we only want to drop it here
-    let _value: String = env.take_rust_field(object, "pointer")
+    // RustObject makes sure that every pointer is only freed once
+    let value = unsafe { Box::from_raw(pointer as *mut RustBox) };
+    // Bundles may be closed while other threads are formatting with them, so the calls that hold the lock
+    // are waited for. Their pointer has already been cleared in Java, so new calls throw instead.
+    if let Some(bundle) = value.downcast_ref::<RwLock<Bundle>>() {
+        drop(bundle.write());
+    }
+}
+
+fn read_pointer(env: &JNIEnv, object: &JObject) -> jlong {
+    env.get_field_unchecked(*object, field(ids().rust_object_pointer), JavaType::Primitive(Primitive::Long))
+        .and_then(|value| value.j())
+        .expect("Could not find pointer in rust object")
+}
+
+fn write_pointer(env: &JNIEnv, object: &JObject, pointer: jlong) {
+    env.set_field_unchecked(*object, field(ids().rust_object_pointer), JValue::Long(pointer))
         .expect("Could not find pointer in rust object");
 }
 
-fn surrender_rust_pointer<'a, T>(env: &'a JNIEnv, object: &'a JObject, value: T)
+fn surrender_rust_pointer<T>(env: &JNIEnv, object: &JObject, value: T)
     where T: 'static + Send {
-    env.set_rust_field(*object, "pointer", value)
-        .expect("Could not find pointer in rust object");
+    write_pointer(env, object, into_pointer(value));
 }
 
-fn get_rust_pointer<'a, T>(env: &'a JNIEnv, object: &'a JObject) -> MutexGuard<'a, T>
+fn into_pointer<T>(value: T) -> jlong
     where T: 'static + Send {
-    env.get_rust_field(*object, "pointer")
-        .expect("Could not find pointer in rust object")
+    let value: RustBox = Box::new(value);
+    Box::into_raw(Box::new(value)) as jlong
+}
+
+// Unlike JNIEnv::get_rust_field, this does not lock anything. Types that can be mutated
+// after binding have to bring their own synchronisation (see FluentBundle).
+// Java checks that objects are open before calling native code, but another thread may close them
+// in the meantime. Then an IllegalStateException is thrown and None is returned instead of panicking,
+// which would abort the JVM.
+fn get_rust_pointer<'a, T>(env: &JNIEnv, object: &JObject<'a>) -> Option<&'a T>
+    where T: 'static + Send {
+    let pointer = read_pointer(env, object);
+    if pointer == 0 {
+        env.throw_new("java/lang/IllegalStateException", "Object has already been closed").unwrap();
+        return None;
+    }
+    Some(from_pointer(pointer))
+}
+
+fn from_pointer<'a, T>(pointer: jlong) -> &'a T
+    where T: 'static + Send {
+    assert_ne!(pointer, 0, "Rust object is not bound");
+    let boxed = unsafe { &*(pointer as *const RustBox) };
+    boxed.downcast_ref::<T>()
+        .expect("Rust object does not have the expected type")
+}
+
+// The functions prefixed with javidaloca_ are plain C exports for the Panama backend on Java 22+
+// (PanamaBackend). They take the same pointers as the JNI functions, so values created by one backend
+// can be used by the other. Strings are passed as UTF-8 and returned in an FfiString that
+// Java has to give back to javidaloca_string_free.
+#[repr(C)]
+pub struct FfiString {
+    pointer: *mut u8,
+    length: usize,
+}
+
+impl FfiString {
+    fn new(string: String) -> Self {
+        let bytes = string.into_bytes().into_boxed_slice();
+        let length = bytes.len();
+        FfiString { pointer: Box::into_raw(bytes) as *mut u8, length }
+    }
+}
+
+#[no_mangle]
+pub extern "C" fn javidaloca_string_free(pointer: *mut u8, length: usize) {
+    let _bytes = unsafe { Box::from_raw(std::slice::from_raw_parts_mut(pointer, length) as *mut [u8]) };
+}
+
+// Nothing may panic across a C export, so invalid input is replaced instead
+fn ffi_str<'a>(pointer: *const u8, length: usize) -> Cow<'a, str> {
+    let bytes = unsafe { std::slice::from_raw_parts(pointer, length) };
+    String::from_utf8_lossy(bytes)
+}
+
+// Like from_pointer, but returns None for closed objects instead of panicking
+fn try_from_pointer<'a, T>(pointer: jlong) -> Option<&'a T>
+    where T: 'static + Send {
+    if pointer == 0 {
+        return None;
+    }
+    let boxed = unsafe { &*(pointer as *const RustBox) };
+    boxed.downcast_ref::<T>()
 }
 
 fn javastr_to_ruststr(env: &JNIEnv, string: JString) -> String {
@@ -43,10 +151,11 @@ fn javastr_to_ruststr(env: &JNIEnv, string: JString) -> String {
 }
 
 fn locale_to_langid(env: &JNIEnv, locale: JObject) -> Option<LanguageIdentifier> {
-    let language = call_str_getter(env, &locale, "getLanguage");
-    let script = call_str_getter(env, &locale, "getScript");
-    let region = call_str_getter(env, &locale, "getCountry");
-    let variant = call_str_getter(env, &locale, "getVariant");
+    let ids = ids();
+    let language = call_str_getter(env, &locale, ids.locale_get_language);
+    let script = call_str_getter(env, &locale, ids.locale_get_script);
+    let region = call_str_getter(env, &locale, ids.locale_get_country);
+    let variant = call_str_getter(env, &locale, ids.locale_get_variant);
     let variants: Vec<String> = match variant {
         Some(v) => vec![v],
         None => vec![]
@@ -55,9 +164,8 @@ fn locale_to_langid(env: &JNIEnv, locale: JObject) -> Option<LanguageIdentifier>
                                                    variants.as_slice()) {
         Some(id)
     } else {
-        let exception = env.new_object(
-            "io/github/javidaloca/InvalidLocaleException",
-            "(Ljava/util/Locale;)V",
+        let exception = env.new_object_unchecked(
+            class(&ids.invalid_locale_exception), method(ids.invalid_locale_exception_new),
             &[JValue::from(locale)],
         ).unwrap();
         env.throw(JThrowable::from(exception)).unwrap();
@@ -65,9 +173,10 @@ fn locale_to_langid(env: &JNIEnv, locale: JObject) -> Option<LanguageIdentifier>
     }
 }
 
-fn call_str_getter(env: &JNIEnv, object: &JObject, name: &str) -> Option<String> {
-    let return_value = env.call_method(*object, name, "()Ljava/lang/String;", &[])
-        .expect(&format!("Could not call {:?}#{}()", object, name));
+fn call_str_getter(env: &JNIEnv, object: &JObject, getter: jmethodID) -> Option<String> {
+    let return_value = env.call_method_unchecked(
+        *object, method(getter), JavaType::Object("java/lang/String".to_owned()), &[],
+    ).expect("Could not call String getter");
     let jstring = JString::from(return_value.l().unwrap());
     let s = javastr_to_ruststr(env, jstring);
     if s.is_empty() {
@@ -77,41 +186,75 @@ fn call_str_getter(env: &JNIEnv, object: &JObject, name: &str) -> Option<String>
     }
 }
 
-fn new_list<'a, 'b>(env: &'b JNIEnv<'a>) -> JList<'a, 'b> {
-    JList::from_env(
-        env, env.new_object("java/util/ArrayList", "()V", &[]).unwrap(),
-    ).unwrap()
+fn new_string_array<'a, I>(env: &JNIEnv, strings: I) -> jobjectArray
+    where I: ExactSizeIterator<Item = &'a str> {
+    let array = env.new_object_array(strings.len() as i32, class(&ids().string), JObject::null())
+        .unwrap();
+    for (i, string) in strings.enumerate() {
+        let string = env.new_string(string).unwrap();
+        env.set_object_array_element(array, i as i32, *string).unwrap();
+        env.delete_local_ref(*string).unwrap();
+    }
+    array
+}
+
+fn new_list<'a>(env: &JNIEnv<'a>) -> JObject<'a> {
+    let ids = ids();
+    env.new_object_unchecked(class(&ids.array_list), method(ids.array_list_new), &[]).unwrap()
+}
+
+fn add_to_list(env: &JNIEnv, list: JObject, element: JObject) {
+    env.call_method_unchecked(
+        list, method(ids().list_add), JavaType::Primitive(Primitive::Boolean), &[JValue::from(element)],
+    ).unwrap();
+}
+
+fn list_elements<'a>(env: &JNIEnv<'a>, list: JObject<'a>) -> Vec<JObject<'a>> {
+    let ids = ids();
+    let size = env.call_method_unchecked(list, method(ids.list_size), JavaType::Primitive(Primitive::Int), &[])
+        .unwrap().i().unwrap();
+    (0..size)
+        .map(|i| env.call_method_unchecked(
+            list, method(ids.list_get), JavaType::Object("java/lang/Object".to_owned()), &[JValue::from(i)],
+        ).unwrap().l().unwrap())
+        .collect()
 }
 
 fn throw_override_exception(env: &JNIEnv, mut errors: Vec<FluentError>) {
-    let exception_cls_name = "io/github/javidaloca/OverrideException";
-    let override_cls =
-        env.find_class(format!("{}$Override", exception_cls_name)).unwrap();
-    let override_constr =
-        env.get_method_id(override_cls, "<init>",
-                          "(Ljava/lang/String;Ljava/lang/String;)V").unwrap();
+    let ids = ids();
     let list = new_list(env);
     while !errors.is_empty() {
         let error = errors.pop().unwrap();
         if let FluentError::Overriding { kind, id } = error {
             let kind = JValue::from(*env.new_string(kind).unwrap());
             let id = JValue::from(*env.new_string(id).unwrap());
-            let object = env.alloc_object(override_cls).unwrap();
-            env.call_method_unchecked(
-                object, override_constr,
-                JavaType::Object("V".to_owned()), &[kind, id],
+            let object = env.new_object_unchecked(
+                class(&ids.override_), method(ids.override_new), &[kind, id],
             ).unwrap();
-            list.add(object).unwrap();
+            add_to_list(env, list, object);
         }
     }
-    let exception = env.new_object(
-        exception_cls_name, "(Ljava/util/List;)V", &[JValue::from(*list)],
+    let exception = env.new_object_unchecked(
+        class(&ids.override_exception), method(ids.override_exception_new), &[JValue::from(list)],
     ).unwrap();
     env.throw(JThrowable::from(exception)).unwrap();
 }
 
-fn throw_format_exception(env: &JNIEnv, message_id: JString, mut errors: Vec<FluentError>) {
+fn throw_format_exception(env: &JNIEnv, message_id: JString, errors: Vec<FluentError>) {
+    let ids = ids();
     let list = new_list(env);
+    for msg in format_error_messages(errors) {
+        add_to_list(env, list, *env.new_string(msg).unwrap());
+    }
+    let exception = env.new_object_unchecked(
+        class(&ids.format_exception), method(ids.format_exception_new),
+        &[JValue::from(*message_id), JValue::from(list)],
+    ).unwrap();
+    env.throw(JThrowable::from(exception)).unwrap();
+}
+
+fn format_error_messages(mut errors: Vec<FluentError>) -> Vec<String> {
+    let mut messages = Vec::with_capacity(errors.len());
     while !errors.is_empty() {
         if let FluentError::ResolverError(resolver_error) = errors.pop().unwrap() {
             let msg = match resolver_error {
@@ -120,24 +263,14 @@ fn throw_format_exception(env: &JNIEnv, message_id: JString, mut errors: Vec<Flu
                 ResolverError::TooManyPlaceables => "Too many Placeables".into(),
                 ResolverError::Reference(reference) => format!("Unresolved reference: {}", reference)
             };
-            list.add(*env.new_string(msg).unwrap()).unwrap();
+            messages.push(msg);
         }
     }
-    let exception =
-        env.new_object(
-            "io/github/javidaloca/MessageFormatException",
-            "(Ljava/lang/String;Ljava/util/List;)V",
-            &[JValue::from(*message_id), JValue::from(*list)],
-        ).unwrap();
-    env.throw(JThrowable::from(exception)).unwrap();
+    messages
 }
 
 fn throw_parse_exception(env: &JNIEnv, source: JString, mut errors: Vec<ParserError>) {
-    let exception_cls_name = "io/github/javidaloca/ParseException";
-    let error_cls = env.find_class(format!("{}$Error", exception_cls_name)).unwrap();
-    let error_constr = env.get_method_id(
-        error_cls, "<init>", "(IILjava/lang/String;)V",
-    ).unwrap();
+    let ids = ids();
     let list = new_list(env);
     while !errors.is_empty() {
         let parser_error = errors.pop().unwrap();
@@ -173,17 +306,15 @@ fn throw_parse_exception(env: &JNIEnv, source: JString, mut errors: Vec<ParserEr
             ErrorKind::ExpectedSimpleExpressionAsSelector => "Expected simple expression as selector".into()
         };
         let msg = *env.new_string(msg).unwrap();
-        let error = env.alloc_object(error_cls).unwrap();
-        env.call_method_unchecked(
-            error, error_constr,
-            JavaType::Primitive(Primitive::Void),
+        let error = env.new_object_unchecked(
+            class(&ids.parse_error), method(ids.parse_error_new),
             &[JValue::from(from as i32), JValue::from(to as i32), JValue::from(msg)],
         ).unwrap();
-        list.add(error).unwrap();
+        add_to_list(env, list, error);
     }
-    let exception = env.new_object(
-        exception_cls_name, "(Ljava/lang/String;Ljava/util/List;)V",
-        &[JValue::from(*source), JValue::from(*list)],
+    let exception = env.new_object_unchecked(
+        class(&ids.parse_exception), method(ids.parse_exception_new),
+        &[JValue::from(*source), JValue::from(list)],
     ).unwrap();
     env.throw(JThrowable::from(exception)).unwrap();
 }
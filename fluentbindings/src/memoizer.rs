@@ -0,0 +1,72 @@
+use std::borrow::Cow;
+use std::cell::Cell;
+use std::collections::HashMap;
+use std::sync::{Arc, Mutex, Once, Weak};
+
+use fluent_bundle::FluentResource;
+use fluent_bundle::bundle::FluentBundleBase;
+use fluent_bundle::memoizer::MemoizerKind;
+use fluent_bundle::types::FluentType;
+use intl_memoizer::Memoizable;
+use intl_memoizer::concurrent::IntlLangMemoizer;
+use unic_langid::LanguageIdentifier;
+
+pub(crate) type FluentBundle<R> = FluentBundleBase<R, SharedMemoizer>;
+
+// The memoizers that are shared by bundles, by locale. Only weak references are kept,
+// so a memoizer is dropped together with the last bundle that uses it.
+static REGISTRY_INIT: Once = Once::new();
+static mut REGISTRY: Option<Mutex<HashMap<LanguageIdentifier, Weak<IntlLangMemoizer>>>> = None;
+
+fn registry() -> &'static Mutex<HashMap<LanguageIdentifier, Weak<IntlLangMemoizer>>> {
+    REGISTRY_INIT.call_once(|| unsafe { REGISTRY = Some(Mutex::new(HashMap::new())) });
+    unsafe { REGISTRY.as_ref() }.unwrap()
+}
+
+thread_local! {
+    // Whether the bundle that is being created on this thread shares its memoizer
+    static SHARE: Cell<bool> = Cell::new(true);
+}
+
+// Creates a bundle whose plural rules and other intl data are shared with all other sharing
+// bundles whose first locale is the same.
+pub(crate) fn new_bundle(locales: &[LanguageIdentifier], share: bool) -> FluentBundle<FluentResource> {
+    // FluentBundle creates its memoizer itself, so whether to share it cannot be passed directly
+    SHARE.with(|cell| cell.set(share));
+    let bundle = FluentBundle::new(locales.iter());
+    SHARE.with(|cell| cell.set(true));
+    bundle
+}
+
+// A thread safe memoizer that may be shared by several bundles
+pub(crate) struct SharedMemoizer(Arc<IntlLangMemoizer>);
+
+impl MemoizerKind for SharedMemoizer {
+    fn new(lang: LanguageIdentifier) -> Self {
+        if !SHARE.with(Cell::get) {
+            return SharedMemoizer(Arc::new(IntlLangMemoizer::new(lang)));
+        }
+        let mut registry = registry().lock().unwrap();
+        if let Some(memoizer) = registry.get(&lang).and_then(Weak::upgrade) {
+            return SharedMemoizer(memoizer);
+        }
+        registry.retain(|_, memoizer| memoizer.strong_count() > 0);
+        let memoizer = Arc::new(IntlLangMemoizer::new(lang.clone()));
+        registry.insert(lang, Arc::downgrade(&memoizer));
+        SharedMemoizer(memoizer)
+    }
+
+    fn with_try_get_threadsafe<I, R, U>(&self, args: I::Args, cb: U) -> Result<R, I::Error>
+    where
+        Self: Sized,
+        I: Memoizable + Sync + Send + 'static,
+        I::Args: Send + Sync + 'static,
+        U: FnOnce(&I) -> R,
+    {
+        self.0.with_try_get(args, cb)
+    }
+
+    fn stringify_value(&self, value: &dyn FluentType) -> Cow<'static, str> {
+        value.as_string_threadsafe(&self.0)
+    }
+}
@@ -0,0 +1,119 @@
+use std::ptr::null_mut;
+use std::sync::{RwLock, RwLockReadGuard};
+
+use fluent_syntax::ast::Pattern;
+use jni::JNIEnv;
+use jni::objects::{JObject, JString};
+use jni::sys::{jboolean, jobject, jobjectArray};
+
+use crate::{get_rust_pointer, javastr_to_ruststr, new_string_array, surrender_rust_pointer};
+use crate::args::with_args;
+use crate::bundle::{Bundle, format_to_java, get_bundle};
+
+// A message id together with pointers to the patterns it resolved to.
+// The patterns live in the resources of the bundle, which are never dropped before the bundle itself.
+// When the bundle's generation changes, a resource may have replaced the message and it is resolved again.
+struct MessageHandle {
+    id: String,
+    resolved: RwLock<Resolved>,
+}
+
+struct Resolved {
+    generation: u64,
+    value: Option<*const Pattern<&'static str>>,
+    attributes: Vec<(String, *const Pattern<&'static str>)>,
+}
+
+// The raw pointers are only dereferenced while holding a read lock on the bundle they point into.
+unsafe impl Send for MessageHandle {}
+unsafe impl Sync for MessageHandle {}
+
+impl MessageHandle {
+    fn resolved<'a>(&'a self, bundle: &Bundle) -> RwLockReadGuard<'a, Resolved> {
+        {
+            let resolved = self.resolved.read().unwrap();
+            if resolved.generation == bundle.generation {
+                return resolved;
+            }
+        }
+        *self.resolved.write().unwrap() = resolve(bundle, &self.id);
+        self.resolved.read().unwrap()
+    }
+}
+
+fn resolve(bundle: &Bundle, id: &str) -> Resolved {
+    let message = bundle.get_message(id)
+        .expect("Message handle was created for an unknown message");
+    Resolved {
+        generation: bundle.generation,
+        value: message.value.map(to_raw),
+        attributes: message.attributes.iter()
+            .map(|(name, pattern)| (name.to_string(), to_raw(pattern)))
+            .collect(),
+    }
+}
+
+fn to_raw(pattern: &Pattern<&str>) -> *const Pattern<&'static str> {
+    pattern as *const Pattern<&str> as *const Pattern<&'static str>
+}
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_FluentMessage_bind(
+    env: JNIEnv,
+    this: JObject,
+    java_bundle: JObject,
+    id: JString,
+) {
+    let id = javastr_to_ruststr(&env, id);
+    let bundle = or_return!(get_bundle(&env, &java_bundle)).read().unwrap();
+    let resolved = resolve(&bundle, &id);
+    surrender_rust_pointer(&env, &this, MessageHandle { id, resolved: RwLock::new(resolved) });
+}
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_FluentMessage_hasValueRs(
+    env: JNIEnv,
+    this: JObject,
+    java_bundle: JObject,
+) -> jboolean {
+    let handle = or_return!(get_rust_pointer::<MessageHandle>(&env, &this));
+    let bundle = or_return!(get_bundle(&env, &java_bundle)).read().unwrap();
+    let has_value = handle.resolved(&bundle).value.is_some();
+    has_value.into()
+}
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_FluentMessage_getAttributeNamesRs(
+    env: JNIEnv,
+    this: JObject,
+    java_bundle: JObject,
+) -> jobjectArray {
+    let handle = or_return!(get_rust_pointer::<MessageHandle>(&env, &this), null_mut());
+    let bundle = or_return!(get_bundle(&env, &java_bundle), null_mut()).read().unwrap();
+    let resolved = handle.resolved(&bundle);
+    new_string_array(&env, resolved.attributes.iter().map(|(name, _)| name.as_str()))
+}
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_FluentMessage_formatRs(
+    env: JNIEnv,
+    this: JObject,
+    java_bundle: JObject,
+    java_id: JString,
+    args: JObject,
+) -> jobject {
+    let handle = or_return!(get_rust_pointer::<MessageHandle>(&env, &this), null_mut());
+    let bundle = or_return!(get_bundle(&env, &java_bundle), null_mut());
+    let result = with_args(&env, args, |fluent_args| {
+        let bundle = bundle.read().unwrap();
+        let value = handle.resolved(&bundle).value;
+        match value {
+            Some(pattern) => {
+                let pattern = unsafe { &*pattern };
+                format_to_java(&env, &bundle, pattern, fluent_args, java_id)
+            },
+            None => null_mut()
+        }
+    });
+    result.unwrap_or(null_mut())
+}
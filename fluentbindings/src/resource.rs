@@ -0,0 +1,169 @@
+use std::collections::BTreeSet;
+use std::ptr::null_mut;
+use std::sync::Mutex;
+
+use fluent_bundle::FluentResource;
+use fluent_syntax::ast::{CallArguments, Entry, Expression, InlineExpression, Pattern, PatternElement, ResourceEntry};
+use jni::JNIEnv;
+use jni::objects::{JByteBuffer, JObject, JString};
+use jni::sys::{jbyte, jbyteArray, jint, jobjectArray};
+
+use crate::{get_rust_pointer, new_string_array, surrender_rust_pointer, throw_parse_exception};
+
+// A parsed resource and the size of its source, which FluentResource does not expose
+pub(crate) struct Resource {
+    pub(crate) inner: FluentResource,
+    pub(crate) source_bytes: usize,
+}
+
+// A resource that has been parsed ahead of time, possibly on another thread,
+// and is taken out once it is added to a bundle.
+type Parsed = Mutex<Option<Resource>>;
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_ParsedResource_bindArray(
+    env: JNIEnv,
+    this: JObject,
+    resource: jbyteArray,
+    offset: jint,
+    length: jint,
+) {
+    if let Some(resource) = parse_array(&env, resource, offset, length) {
+        surrender_rust_pointer::<Parsed>(&env, &this, Mutex::new(Some(resource)));
+    }
+}
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_ParsedResource_bindBuffer(
+    env: JNIEnv,
+    this: JObject,
+    resource: JObject,
+    position: jint,
+    remaining: jint,
+) {
+    if let Some(resource) = parse_buffer(&env, resource, position, remaining) {
+        surrender_rust_pointer::<Parsed>(&env, &this, Mutex::new(Some(resource)));
+    }
+}
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_ParsedResource_referencesRs(
+    env: JNIEnv,
+    this: JObject,
+) -> jobjectArray {
+    let parsed = or_return!(get_rust_pointer::<Parsed>(&env, &this), null_mut()).lock().unwrap();
+    let resource = parsed.as_ref().expect("Resource has already been added to a bundle");
+    let mut references = BTreeSet::new();
+    for entry in &resource.inner.ast().body {
+        match entry {
+            ResourceEntry::Entry(Entry::Message(message)) => {
+                if let Some(value) = &message.value {
+                    collect_pattern(value, &mut references);
+                }
+                for attribute in &message.attributes {
+                    collect_pattern(&attribute.value, &mut references);
+                }
+            }
+            ResourceEntry::Entry(Entry::Term(term)) => {
+                collect_pattern(&term.value, &mut references);
+                for attribute in &term.attributes {
+                    collect_pattern(&attribute.value, &mut references);
+                }
+            }
+            _ => {}
+        }
+    }
+    new_string_array(&env, references.iter().map(String::as_str))
+}
+
+// Message references are collected by their id, term references by their id prefixed with "-"
+fn collect_pattern(pattern: &Pattern<&str>, references: &mut BTreeSet<String>) {
+    for element in &pattern.elements {
+        if let PatternElement::Placeable(expression) = element {
+            collect_expression(expression, references);
+        }
+    }
+}
+
+fn collect_expression(expression: &Expression<&str>, references: &mut BTreeSet<String>) {
+    match expression {
+        Expression::InlineExpression(inline) => collect_inline(inline, references),
+        Expression::SelectExpression { selector, variants } => {
+            collect_inline(selector, references);
+            for variant in variants {
+                collect_pattern(&variant.value, references);
+            }
+        }
+    }
+}
+
+fn collect_inline(inline: &InlineExpression<&str>, references: &mut BTreeSet<String>) {
+    match inline {
+        InlineExpression::MessageReference { id, .. } => {
+            references.insert(id.name.to_owned());
+        }
+        InlineExpression::TermReference { id, arguments, .. } => {
+            references.insert(format!("-{}", id.name));
+            collect_arguments(arguments, references);
+        }
+        InlineExpression::FunctionReference { arguments, .. } => collect_arguments(arguments, references),
+        InlineExpression::Placeable { expression } => collect_expression(expression, references),
+        _ => {}
+    }
+}
+
+fn collect_arguments(arguments: &Option<CallArguments<&str>>, references: &mut BTreeSet<String>) {
+    if let Some(arguments) = arguments {
+        for argument in &arguments.positional {
+            collect_inline(argument, references);
+        }
+        for argument in &arguments.named {
+            collect_inline(&argument.value, references);
+        }
+    }
+}
+
+// Returns None if the resource has been closed
+pub(crate) fn take_resource(env: &JNIEnv, object: &JObject) -> Option<Resource> {
+    let resource = get_rust_pointer::<Parsed>(env, object)?.lock().unwrap().take()
+        .expect("Resource has already been added to a bundle");
+    Some(resource)
+}
+
+pub(crate) fn parse_array(env: &JNIEnv, array: jbyteArray, offset: jint, length: jint) -> Option<Resource> {
+    let read_source = || {
+        let mut bytes = vec![0u8; length as usize];
+        {
+            let target = unsafe { &mut *(bytes.as_mut_slice() as *mut [u8] as *mut [jbyte]) };
+            env.get_byte_array_region(array, offset, target).unwrap();
+        }
+        // Valid UTF-8 is moved into the String as is, so the bytes are only copied once
+        String::from_utf8(bytes)
+            .unwrap_or_else(|error| String::from_utf8_lossy(error.as_bytes()).into_owned())
+    };
+    // The Java String for a ParseException is only created if there is one
+    create_resource(env, read_source(), || env.new_string(read_source()).unwrap())
+}
+
+pub(crate) fn parse_buffer(env: &JNIEnv, buffer: JObject, position: jint, remaining: jint) -> Option<Resource> {
+    let buffer = env.get_direct_buffer_address(JByteBuffer::from(buffer)).unwrap();
+    let start = position as usize;
+    let bytes = &buffer[start..start + remaining as usize];
+    create_resource(
+        env,
+        String::from_utf8_lossy(bytes).into_owned(),
+        || env.new_string(String::from_utf8_lossy(bytes)).unwrap(),
+    )
+}
+
+pub(crate) fn create_resource<'a, F>(env: &JNIEnv<'a>, source: String, java_source: F) -> Option<Resource>
+    where F: FnOnce() -> JString<'a> {
+    let source_bytes = source.len();
+    match FluentResource::try_new(source) {
+        Ok(resource) => Some(Resource { inner: resource, source_bytes }),
+        Err((_, errors)) => {
+            throw_parse_exception(env, java_source(), errors);
+            None
+        }
+    }
+}
@@ -0,0 +1,159 @@
+use std::mem::size_of;
+use std::sync::atomic::{AtomicUsize, Ordering};
+
+use fluent_bundle::FluentResource;
+use fluent_syntax::ast::{Attribute, CallArguments, Entry, Expression, InlineExpression, NamedArgument, Pattern, PatternElement, ResourceEntry, Variant};
+use jni::JNIEnv;
+use jni::objects::JClass;
+use jni::sys::{jlong, jlongArray};
+
+// What all live bundles hold together, kept up to date by BundleUsage
+struct Totals {
+    bundles: AtomicUsize,
+    messages: AtomicUsize,
+    terms: AtomicUsize,
+    resources: AtomicUsize,
+    source_bytes: AtomicUsize,
+    ast_bytes: AtomicUsize,
+}
+
+static TOTALS: Totals = Totals {
+    bundles: AtomicUsize::new(0),
+    messages: AtomicUsize::new(0),
+    terms: AtomicUsize::new(0),
+    resources: AtomicUsize::new(0),
+    source_bytes: AtomicUsize::new(0),
+    ast_bytes: AtomicUsize::new(0),
+};
+
+// What a single bundle holds. Resources are never removed from a bundle, so the numbers only grow
+// until the bundle is dropped and they are subtracted from the totals again.
+pub(crate) struct BundleUsage {
+    messages: usize,
+    terms: usize,
+    resources: usize,
+    source_bytes: usize,
+    ast_bytes: usize,
+}
+
+impl BundleUsage {
+    pub(crate) fn new() -> Self {
+        TOTALS.bundles.fetch_add(1, Ordering::Relaxed);
+        BundleUsage { messages: 0, terms: 0, resources: 0, source_bytes: 0, ast_bytes: 0 }
+    }
+
+    pub(crate) fn record(&mut self, new_messages: usize, new_terms: usize, source_bytes: usize, ast_bytes: usize) {
+        self.messages += new_messages;
+        self.terms += new_terms;
+        self.resources += 1;
+        self.source_bytes += source_bytes;
+        self.ast_bytes += ast_bytes;
+        TOTALS.messages.fetch_add(new_messages, Ordering::Relaxed);
+        TOTALS.terms.fetch_add(new_terms, Ordering::Relaxed);
+        TOTALS.resources.fetch_add(1, Ordering::Relaxed);
+        TOTALS.source_bytes.fetch_add(source_bytes, Ordering::Relaxed);
+        TOTALS.ast_bytes.fetch_add(ast_bytes, Ordering::Relaxed);
+    }
+
+    // [messages, terms, resources, source bytes, AST bytes]
+    pub(crate) fn to_java(&self, env: &JNIEnv) -> jlongArray {
+        new_long_array(env, &[self.messages, self.terms, self.resources, self.source_bytes, self.ast_bytes])
+    }
+}
+
+impl Drop for BundleUsage {
+    fn drop(&mut self) {
+        TOTALS.bundles.fetch_sub(1, Ordering::Relaxed);
+        TOTALS.messages.fetch_sub(self.messages, Ordering::Relaxed);
+        TOTALS.terms.fetch_sub(self.terms, Ordering::Relaxed);
+        TOTALS.resources.fetch_sub(self.resources, Ordering::Relaxed);
+        TOTALS.source_bytes.fetch_sub(self.source_bytes, Ordering::Relaxed);
+        TOTALS.ast_bytes.fetch_sub(self.ast_bytes, Ordering::Relaxed);
+    }
+}
+
+fn new_long_array(env: &JNIEnv, values: &[usize]) -> jlongArray {
+    let values: Vec<jlong> = values.iter().map(|&value| value as jlong).collect();
+    let array = env.new_long_array(values.len() as i32).unwrap();
+    env.set_long_array_region(array, 0, &values).unwrap();
+    array
+}
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_NativeStatistics_totalsRs(
+    env: JNIEnv,
+    _class: JClass,
+) -> jlongArray {
+    // The totals are read one by one, so they may be slightly inconsistent while bundles are changed
+    new_long_array(&env, &[
+        TOTALS.bundles.load(Ordering::Relaxed),
+        TOTALS.messages.load(Ordering::Relaxed),
+        TOTALS.terms.load(Ordering::Relaxed),
+        TOTALS.resources.load(Ordering::Relaxed),
+        TOTALS.source_bytes.load(Ordering::Relaxed),
+        TOTALS.ast_bytes.load(Ordering::Relaxed),
+    ])
+}
+
+// Estimates the heap memory taken up by the nodes of a resource's AST.
+// Strings are not counted since they point into the source.
+pub(crate) fn ast_size(resource: &FluentResource) -> usize {
+    let body = &resource.ast().body;
+    body.len() * size_of::<ResourceEntry<&str>>() + body.iter()
+        .map(|entry| match entry {
+            ResourceEntry::Entry(Entry::Message(message)) =>
+                message.value.as_ref().map_or(0, pattern_size) + attributes_size(&message.attributes),
+            ResourceEntry::Entry(Entry::Term(term)) =>
+                pattern_size(&term.value) + attributes_size(&term.attributes),
+            _ => 0
+        })
+        .sum::<usize>()
+}
+
+fn attributes_size(attributes: &[Attribute<&str>]) -> usize {
+    attributes.iter()
+        .map(|attribute| size_of::<Attribute<&str>>() + pattern_size(&attribute.value))
+        .sum()
+}
+
+fn pattern_size(pattern: &Pattern<&str>) -> usize {
+    pattern.elements.iter()
+        .map(|element| size_of::<PatternElement<&str>>() + match element {
+            PatternElement::Placeable(expression) => expression_size(expression),
+            _ => 0
+        })
+        .sum()
+}
+
+fn expression_size(expression: &Expression<&str>) -> usize {
+    match expression {
+        Expression::InlineExpression(inline) => inline_size(inline),
+        Expression::SelectExpression { selector, variants } => inline_size(selector) + variants.iter()
+            .map(|variant| size_of::<Variant<&str>>() + pattern_size(&variant.value))
+            .sum::<usize>()
+    }
+}
+
+fn inline_size(inline: &InlineExpression<&str>) -> usize {
+    match inline {
+        InlineExpression::TermReference { arguments, .. } => arguments_size(arguments),
+        InlineExpression::FunctionReference { arguments, .. } => arguments_size(arguments),
+        InlineExpression::Placeable { expression } => size_of::<Expression<&str>>() + expression_size(expression),
+        _ => 0
+    }
+}
+
+fn arguments_size(arguments: &Option<CallArguments<&str>>) -> usize {
+    match arguments {
+        Some(arguments) => {
+            let positional: usize = arguments.positional.iter()
+                .map(|argument| size_of::<InlineExpression<&str>>() + inline_size(argument))
+                .sum();
+            let named: usize = arguments.named.iter()
+                .map(|argument| size_of::<NamedArgument<&str>>() + inline_size(&argument.value))
+                .sum();
+            positional + named
+        }
+        None => 0
+    }
+}
@@ -1,10 +1,19 @@
+use std::borrow::Cow;
+use std::fmt;
+use std::sync::Arc;
+
 use fluent_bundle::FluentValue;
-use fluent_bundle::types::{FluentNumber, FluentNumberStyle, FluentNumberCurrencyDisplayStyle, FluentNumberOptions};
+use fluent_bundle::types::{FluentNumber, FluentNumberStyle, FluentNumberCurrencyDisplayStyle, FluentNumberOptions, FluentType};
+use intl_memoizer::{IntlLangMemoizer, Memoizable};
+use intl_memoizer::concurrent::IntlLangMemoizer as ConcurrentIntlLangMemoizer;
 use jni::JNIEnv;
-use jni::sys::jdouble;
-use jni::objects::{JObject, JString};
+use jni::signature::{JavaType, Primitive};
+use jni::sys::{jdouble, jfieldID, jlong, jobject};
+use jni::objects::{JObject, JString, JValue};
+use unic_langid::LanguageIdentifier;
 
-use crate::{javastr_to_ruststr, surrender_rust_pointer, call_str_getter};
+use crate::{javastr_to_ruststr, surrender_rust_pointer, call_str_getter, get_rust_pointer, ffi_str, try_from_pointer, into_pointer};
+use crate::ids::{field, ids, method};
 
 #[no_mangle]
 pub extern "system" fn Java_io_github_javidaloca_FluentString_bind(
@@ -25,47 +34,206 @@ pub extern "system" fn Java_io_github_javidaloca_FluentNumber_bind(
 ) {
     surrender_rust_pointer(&env, &this, FluentValue::Number(FluentNumber {
         value,
-        options: java_options_to_rust(&env, options)
+        options: or_return!(get_options(&env, &options))
     }));
 }
 
+// C exports of the two bind functions above, returning the new pointer
+
+#[no_mangle]
+pub extern "C" fn javidaloca_string_new(value: *const u8, length: usize) -> jlong {
+    into_pointer(FluentValue::from(ffi_str(value, length).into_owned()))
+}
+
+// Returns 0 if the options have been closed
+#[no_mangle]
+pub extern "C" fn javidaloca_number_new(value: f64, options: jlong) -> jlong {
+    match try_from_pointer::<FluentNumberOptions>(options) {
+        Some(options) => into_pointer(FluentValue::Number(FluentNumber { value, options: options.clone() })),
+        None => 0
+    }
+}
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_FluentNumber_00024Options_bind(
+    env: JNIEnv,
+    this: JObject,
+) {
+    // Options are immutable, so their fields only need to be read once.
+    let options = java_options_to_rust(&env, this);
+    surrender_rust_pointer(&env, &this, options);
+}
+
+// Returns None if the options have been closed
+pub(crate) fn get_options(env: &JNIEnv, options: &JObject) -> Option<FluentNumberOptions> {
+    get_rust_pointer::<FluentNumberOptions>(env, options).cloned()
+}
+
 fn java_options_to_rust(env: &JNIEnv, options: JObject) -> FluentNumberOptions {
-    let style = env.get_field(
-        options, "style", "Lio/github/javidaloca/FluentNumber$Style;"
-    ).unwrap().l().unwrap();
-    let name = call_str_getter(env, &style, "name").unwrap().to_lowercase();
+    let ids = ids();
+    let get_field = |id: jfieldID, ty: JavaType| env.get_field_unchecked(options, field(id), ty).unwrap();
+    let enum_type = || JavaType::Object("java/lang/Enum".to_owned());
+    let style = get_field(ids.options_style, enum_type()).l().unwrap();
+    let name = call_str_getter(env, &style, ids.enum_name).unwrap().to_lowercase();
     let style = FluentNumberStyle::from(&*name);
-    let currency = env.get_field(options, "currency", "Ljava/lang/String;")
-        .unwrap().l().unwrap();
+    let currency = get_field(ids.options_currency, JavaType::Object("java/lang/String".to_owned()))
+        .l().unwrap();
     let currency = if currency.is_null() {
         None
     } else {
         Some(javastr_to_ruststr(env, JString::from(currency)))
     };
-    let currency_display = env.get_field(
-        options, "currencyDisplay",
-        "Lio/github/javidaloca/FluentNumber$CurrencyDisplayStyle;"
-    ).unwrap().l().unwrap();
-    let name = call_str_getter(env, &currency_display, "name").unwrap().to_lowercase();
+    let currency_display = get_field(ids.options_currency_display, enum_type()).l().unwrap();
+    let name = call_str_getter(env, &currency_display, ids.enum_name).unwrap().to_lowercase();
     let currency_display = FluentNumberCurrencyDisplayStyle::from(&*name);
-    let get_usize_field = |name: &str| {
-        let value = env.get_field(options, name, "J").unwrap().j().unwrap();
+    let get_usize_field = |id: jfieldID| {
+        let value = get_field(id, JavaType::Primitive(Primitive::Long)).j().unwrap();
         if value < 0 {
             None
         } else {
             Some(value as usize)
         }
     };
-    let use_grouping = env.get_field(options, "useGrouping", "Z").unwrap().z().unwrap();
-    let minimum_integer_digits = get_usize_field("minimumIntegerDigits");
-    let minimum_fraction_digits = get_usize_field("minimumFractionDigits");
-    let maximum_fraction_digits = get_usize_field("maximumFractionDigits");
-    let minimum_significant_digits = get_usize_field("minimumSignificantDigits");
-    let maximum_significant_digits = get_usize_field("maximumSignificantDigits");
+    let use_grouping = get_field(ids.options_use_grouping, JavaType::Primitive(Primitive::Boolean))
+        .z().unwrap();
+    let minimum_integer_digits = get_usize_field(ids.options_minimum_integer_digits);
+    let minimum_fraction_digits = get_usize_field(ids.options_minimum_fraction_digits);
+    let maximum_fraction_digits = get_usize_field(ids.options_maximum_fraction_digits);
+    let minimum_significant_digits = get_usize_field(ids.options_minimum_significant_digits);
+    let maximum_significant_digits = get_usize_field(ids.options_maximum_significant_digits);
     FluentNumberOptions {
         style, currency, currency_display,
         use_grouping, minimum_integer_digits,
         minimum_fraction_digits, maximum_fraction_digits,
         minimum_significant_digits, maximum_significant_digits
     }
-}
\ No newline at end of file
+}
+
+
+// A value implemented in Java by a FluentCustomValue, which is only asked to format itself
+// when a message actually displays it.
+// The Rust value is owned by the Java object, so it only holds a weak reference to it;
+// whoever passes the value on (FluentArgs or a map) keeps the Java object alive.
+// Values returned by functions are the exception: nothing on the Java side references them
+// once the function's local frame is gone, so they hold a strong reference instead.
+#[derive(Clone)]
+pub(crate) struct JavaValue(Arc<JavaRef>);
+
+struct JavaRef {
+    object: jobject,
+    strong: bool,
+}
+
+unsafe impl Send for JavaRef {}
+unsafe impl Sync for JavaRef {}
+
+impl Drop for JavaRef {
+    fn drop(&mut self) {
+        // Values are only ever dropped on Java threads, either when they are freed,
+        // when arguments are cleared or when the format call that produced them returns
+        if let Ok(env) = ids().vm.get_env() {
+            let raw = env.get_native_interface();
+            unsafe {
+                if self.strong {
+                    (**raw).DeleteGlobalRef.unwrap()(raw, self.object)
+                } else {
+                    (**raw).DeleteWeakGlobalRef.unwrap()(raw, self.object)
+                }
+            };
+        }
+    }
+}
+
+impl JavaValue {
+    // A value that keeps the Java object alive for as long as it is used
+    pub(crate) fn strong(env: &JNIEnv, object: JObject) -> Self {
+        let raw = env.get_native_interface();
+        let object = unsafe { (**raw).NewGlobalRef.unwrap()(raw, object.into_inner()) };
+        JavaValue(Arc::new(JavaRef { object, strong: true }))
+    }
+
+    // Returns a local reference to the Java object, which is null if it has been collected
+    pub(crate) fn to_local<'e>(&self, env: &JNIEnv<'e>) -> JObject<'e> {
+        let raw = env.get_native_interface();
+        JObject::from(unsafe { (**raw).NewLocalRef.unwrap()(raw, self.0.object) })
+    }
+
+    fn format(&self, language_tag: &str) -> Cow<'static, str> {
+        let ids = ids();
+        let env = ids.vm.get_env().expect("Custom value formatted outside of a format call");
+        // Nothing may be called while an exception is pending; it is thrown once the format call returns
+        if env.exception_check().unwrap() {
+            return "".into();
+        }
+        let object = self.to_local(&env);
+        if object.is_null() {
+            return "???".into();
+        }
+        let tag = env.new_string(language_tag).unwrap();
+        let result = env.call_method_unchecked(
+            object, method(ids.custom_value_format_for),
+            JavaType::Object("java/lang/String".to_owned()), &[JValue::from(*tag)],
+        ).and_then(|result| result.l());
+        env.delete_local_ref(*tag).unwrap();
+        env.delete_local_ref(object).unwrap();
+        match result {
+            Ok(string) if !env.exception_check().unwrap() => {
+                let formatted = javastr_to_ruststr(&env, JString::from(string));
+                env.delete_local_ref(string).unwrap();
+                formatted.into()
+            }
+            _ => "".into()
+        }
+    }
+}
+
+impl fmt::Debug for JavaValue {
+    fn fmt(&self, f: &mut fmt::Formatter<'_>) -> fmt::Result {
+        f.write_str("JavaValue")
+    }
+}
+
+impl PartialEq for JavaValue {
+    fn eq(&self, other: &Self) -> bool {
+        Arc::ptr_eq(&self.0, &other.0)
+    }
+}
+
+impl FluentType for JavaValue {
+    fn duplicate(&self) -> Box<dyn FluentType + Send> {
+        Box::new(self.clone())
+    }
+
+    fn as_string(&self, intls: &IntlLangMemoizer) -> Cow<'static, str> {
+        let tag = intls.with_try_get::<LanguageTag, _, _>((), |tag| tag.0.clone()).unwrap_or_default();
+        self.format(&tag)
+    }
+
+    fn as_string_threadsafe(&self, intls: &ConcurrentIntlLangMemoizer) -> Cow<'static, str> {
+        let tag = intls.with_try_get::<LanguageTag, _, _>((), |tag| tag.0.clone()).unwrap_or_default();
+        self.format(&tag)
+    }
+}
+
+// The language of a bundle, memoized so that it is only converted to a string once
+struct LanguageTag(String);
+
+impl Memoizable for LanguageTag {
+    type Args = ();
+    type Error = ();
+
+    fn construct(lang: LanguageIdentifier, _args: Self::Args) -> Result<Self, Self::Error> {
+        Ok(LanguageTag(lang.to_string()))
+    }
+}
+
+#[no_mangle]
+pub extern "system" fn Java_io_github_javidaloca_FluentCustomValue_bind(
+    env: JNIEnv,
+    this: JObject,
+) {
+    let raw = env.get_native_interface();
+    let weak = unsafe { (**raw).NewWeakGlobalRef.unwrap()(raw, this.into_inner()) };
+    let value = JavaValue(Arc::new(JavaRef { object: weak, strong: false }));
+    surrender_rust_pointer(&env, &this, FluentValue::Custom(Box::new(value)));
+}
@@ -0,0 +1,66 @@
+package io.github.javidaloca;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per-call overhead of the JNI and the Panama {@link NativeBackend} for the calls they both make:
+ * creating values and formatting a message that is resolved by fluent-rs, in the subclasses for each backend.
+ * {@link PanamaBackendBenchmark} requires running on Java 22 or newer and is only run if {@code java22Home}
+ * is set in the build.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class BackendBenchmark {
+
+  private FluentBundle bundle;
+  private FluentArgs args;
+  private double value;
+
+  @Setup
+  public void setUp() {
+    // Every benchmark runs in its own fork, in which the backend has not been selected yet
+    String backend = backend();
+    System.setProperty(NativeBackend.PROPERTY, backend);
+    if (!NativeBackend.get().name().equals(backend)) {
+      throw new IllegalStateException("Backend " + backend + " was not selected");
+    }
+    bundle = FluentBundle.create(Locale.US);
+    bundle.addResource("items = { $count ->\n    [one] One item\n   *[other] { $count } items\n}", false);
+    args = FluentArgs.create().insert("count", 3L);
+  }
+
+  protected abstract String backend();
+
+  @TearDown
+  public void tearDown() {
+    args.close();
+    bundle.close();
+  }
+
+  @Benchmark
+  public double numberOf() {
+    value++;
+    try (FluentNumber number = FluentNumber.of(value)) {
+      return number.getValue();
+    }
+  }
+
+  @Benchmark
+  public String stringOf() {
+    try (FluentString string = FluentString.of("value")) {
+      return string.getValue();
+    }
+  }
+
+  @Benchmark
+  public String formatMessage() {
+    return bundle.formatMessage("items", args).orElse(null);
+  }
+}
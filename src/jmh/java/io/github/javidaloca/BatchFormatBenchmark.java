@@ -0,0 +1,61 @@
+package io.github.javidaloca;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares formatting a page worth of messages one by one with formatting them in one batch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchFormatBenchmark {
+
+  @Param({"50", "300"})
+  public int messages;
+
+  private FluentBundle bundle;
+  private FluentArgs args;
+  private List<String> ids;
+
+  @Setup
+  public void setUp() {
+    bundle = FluentBundle.create(Locale.US);
+    StringBuilder resource = new StringBuilder();
+    ids = new ArrayList<>(messages);
+    for (int i = 0; i < messages; i++) {
+      resource.append("message-").append(i).append(" = Hello { $name }, you have { $count } new items\n");
+      ids.add("message-" + i);
+    }
+    bundle.addResource(resource.toString(), false);
+    args = FluentArgs.create()
+        .insert("name", "Johnny")
+        .insert("count", 27L);
+  }
+
+  @TearDown
+  public void tearDown() {
+    args.close();
+    bundle.close();
+  }
+
+  @Benchmark
+  public void singleCalls(Blackhole blackhole) {
+    for (String id : ids) {
+      blackhole.consume(bundle.formatMessage(id, args));
+    }
+  }
+
+  @Benchmark
+  public List<FormatResult> batch() {
+    return bundle.formatMessages(ids, args);
+  }
+}
@@ -0,0 +1,63 @@
+package io.github.javidaloca;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures formatting from several threads against one shared bundle, as in a server.
+ * Compare the results with a single thread ({@code -t 1}) to see how well formatting scales:
+ * bundles are only locked for reading while formatting, so the throughput should grow with the number of threads
+ * instead of staying at the single thread level, as it would if formatting was serialized.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(Threads.MAX)
+@Fork(1)
+public class ConcurrentFormatBenchmark {
+
+  private FluentBundle bundle;
+
+  @Setup
+  public void setUp() {
+    bundle = FluentBundle.create(Locale.US);
+    bundle.addResource("hello = Hello, { $name }!\n"
+        + "items = { $count ->\n    [one] One item\n   *[other] { $count } items\n}\n", false);
+  }
+
+  @TearDown
+  public void tearDown() {
+    bundle.close();
+  }
+
+  // Every thread uses its own arguments
+  @State(Scope.Thread)
+  public static class Arguments {
+
+    private FluentArgs args;
+
+    @Setup
+    public void setUp() {
+      args = FluentArgs.create().insert("name", "Anna").insert("count", 3L);
+    }
+
+    @TearDown
+    public void tearDown() {
+      args.close();
+    }
+  }
+
+  @Benchmark
+  public String template(Arguments arguments) {
+    return bundle.formatMessage("hello", arguments.args).orElse(null);
+  }
+
+  @Benchmark
+  public String select(Arguments arguments) {
+    return bundle.formatMessage("items", arguments.args).orElse(null);
+  }
+}
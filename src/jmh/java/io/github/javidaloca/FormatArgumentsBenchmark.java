@@ -0,0 +1,74 @@
+package io.github.javidaloca;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.text.MessageFormat;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how formatting scales with the number of arguments, both for a message that is formatted
+ * in Java and for one that has to be resolved by fluent-rs, compared with {@link MessageFormat}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatArgumentsBenchmark {
+
+  @Param({"0", "5", "20"})
+  public int arguments;
+
+  private FluentBundle bundle;
+  private FluentArgs args;
+  private MessageFormat messageFormat;
+  private Object[] messageFormatArgs;
+
+  @Setup
+  public void setUp() {
+    StringBuilder fluent = new StringBuilder("Values:");
+    StringBuilder java = new StringBuilder("Values:");
+    args = FluentArgs.create();
+    messageFormatArgs = new Object[arguments];
+    for (int i = 0; i < arguments; i++) {
+      fluent.append(" { $arg").append(i).append(" }");
+      java.append(" {").append(i).append('}');
+      if (i % 2 == 0) {
+        args.insert("arg" + i, "value " + i);
+        messageFormatArgs[i] = "value " + i;
+      } else {
+        args.insert("arg" + i, (long) i);
+        messageFormatArgs[i] = (long) i;
+      }
+    }
+    bundle = FluentBundle.create(Locale.US);
+    bundle.setUseIsolating(false);
+    // The select expression keeps the second message from being formatted in Java
+    bundle.addResource("plain = " + fluent + "\n"
+        + "native = " + fluent + " { \"end\" ->\n   *[end] .\n}\n", false);
+    messageFormat = new MessageFormat(java.toString(), Locale.US);
+  }
+
+  @TearDown
+  public void tearDown() {
+    args.close();
+    bundle.close();
+  }
+
+  @Benchmark
+  public String fluentJava() {
+    return bundle.formatMessage("plain", args).orElse(null);
+  }
+
+  @Benchmark
+  public String fluentNative() {
+    return bundle.formatMessage("native", args).orElse(null);
+  }
+
+  @Benchmark
+  public String messageFormat() {
+    return messageFormat.format(messageFormatArgs);
+  }
+}
@@ -0,0 +1,62 @@
+package io.github.javidaloca;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of calling a {@link FluentFunction} from a message, compared to a message of
+ * similar shape that does not call one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FunctionCallBenchmark {
+
+  private FluentBundle bundle;
+  private FluentArgs args;
+
+  @Setup
+  public void setUp() {
+    bundle = FluentBundle.create(Locale.US);
+    bundle.setUseIsolating(false);
+    // String literals keep the baseline from being formatted in Java
+    bundle.addResource("baseline = { \"Product\" } { $name }\n"
+        + "no-arguments = { PRODUCT_NAME() } { $name }\n"
+        + "positional = { ECHO($name) }\n"
+        + "named = { ECHO($name, case: \"upper\", count: 3) }\n", false);
+    bundle.addFunction("PRODUCT_NAME", (arguments) -> "Product");
+    bundle.addFunction("ECHO", (arguments) -> arguments.getPositional(0));
+    args = FluentArgs.create().insert("name", "Javidaloca");
+  }
+
+  @TearDown
+  public void tearDown() {
+    args.close();
+    bundle.close();
+  }
+
+  @Benchmark
+  public String baseline() {
+    return bundle.formatMessage("baseline", args).orElse(null);
+  }
+
+  @Benchmark
+  public String noArguments() {
+    return bundle.formatMessage("no-arguments", args).orElse(null);
+  }
+
+  @Benchmark
+  public String positionalArgument() {
+    return bundle.formatMessage("positional", args).orElse(null);
+  }
+
+  @Benchmark
+  public String namedArguments() {
+    return bundle.formatMessage("named", args).orElse(null);
+  }
+}
@@ -0,0 +1,59 @@
+package io.github.javidaloca;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of {@link FormatInstrumentation} on a message formatted in Java and on one
+ * formatted in Rust, without instrumentation, with one that does nothing and with {@link FormatMetrics}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstrumentationBenchmark {
+
+  @Param({"none", "noop", "metrics"})
+  public String instrumentation;
+
+  private FluentBundle bundle;
+  private FluentArgs args;
+
+  @Setup
+  public void setUp() {
+    bundle = FluentBundle.create(Locale.US);
+    bundle.addResource("hello = Hello, { $name }!\n"
+        + "items = { $count ->\n    [one] One item\n   *[other] { $count } items\n}\n", false);
+    switch (instrumentation) {
+      case "noop":
+        bundle.setInstrumentation(new FormatInstrumentation() {});
+        break;
+      case "metrics":
+        bundle.setInstrumentation(new FormatMetrics());
+        break;
+      default:
+        break;
+    }
+    args = FluentArgs.create().insert("name", "Anna").insert("count", 3);
+  }
+
+  @TearDown
+  public void tearDown() {
+    args.close();
+    bundle.close();
+  }
+
+  @Benchmark
+  public String template() {
+    return bundle.formatMessage("hello", args).orElse(null);
+  }
+
+  @Benchmark
+  public String select() {
+    return bundle.formatMessage("items", args).orElse(null);
+  }
+}
@@ -0,0 +1,12 @@
+package io.github.javidaloca;
+
+/**
+ * Runs the {@link BackendBenchmark} with the JNI backend.
+ */
+public class JniBackendBenchmark extends BackendBenchmark {
+
+  @Override
+  protected String backend() {
+    return "jni";
+  }
+}
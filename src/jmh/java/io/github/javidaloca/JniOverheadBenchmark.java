@@ -0,0 +1,56 @@
+package io.github.javidaloca;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the calls that cross into native code most often: creating values and formatting a message
+ * that is resolved by fluent-rs (a select expression, which is never formatted in Java).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JniOverheadBenchmark {
+
+  private FluentBundle bundle;
+  private FluentArgs args;
+  private double value;
+
+  @Setup
+  public void setUp() {
+    bundle = FluentBundle.create(Locale.US);
+    bundle.addResource("items = { $count ->\n    [one] One item\n   *[other] { $count } items\n}", false);
+    args = FluentArgs.create().insert("count", 3L);
+  }
+
+  @TearDown
+  public void tearDown() {
+    args.close();
+    bundle.close();
+  }
+
+  @Benchmark
+  public double numberOf() {
+    value++;
+    try (FluentNumber number = FluentNumber.of(value)) {
+      return number.getValue();
+    }
+  }
+
+  @Benchmark
+  public String stringOf() {
+    try (FluentString string = FluentString.of("value")) {
+      return string.getValue();
+    }
+  }
+
+  @Benchmark
+  public String formatMessage() {
+    return bundle.formatMessage("items", args).orElse(null);
+  }
+}
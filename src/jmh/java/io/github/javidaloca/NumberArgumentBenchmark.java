@@ -0,0 +1,54 @@
+package io.github.javidaloca;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares inserting numbers as {@link FluentNumber} objects with inserting them as primitives.
+ * Run with the gc profiler (enabled by default in the build) to see the allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NumberArgumentBenchmark {
+
+  private FluentBundle bundle;
+  private FluentArgs args;
+  private double value;
+
+  @Setup
+  public void setUp() {
+    bundle = FluentBundle.create(Locale.US);
+    bundle.addResource("price = { $amount } for { $count } items", false);
+    args = FluentArgs.create();
+  }
+
+  @TearDown
+  public void tearDown() {
+    args.close();
+    bundle.close();
+  }
+
+  @Benchmark
+  public String numberObjects() {
+    value++;
+    args.clear();
+    args.insert("amount", FluentNumber.of(value))
+        .insert("count", FluentNumber.of(3));
+    return bundle.formatMessage("price", args).orElse(null);
+  }
+
+  @Benchmark
+  public String primitiveNumbers() {
+    value++;
+    args.clear();
+    args.insert("amount", value)
+        .insert("count", 3L);
+    return bundle.formatMessage("price", args).orElse(null);
+  }
+}
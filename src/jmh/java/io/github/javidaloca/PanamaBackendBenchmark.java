@@ -0,0 +1,12 @@
+package io.github.javidaloca;
+
+/**
+ * Runs the {@link BackendBenchmark} with the Panama backend, on Java 22 or newer.
+ */
+public class PanamaBackendBenchmark extends BackendBenchmark {
+
+  @Override
+  protected String backend() {
+    return "panama";
+  }
+}
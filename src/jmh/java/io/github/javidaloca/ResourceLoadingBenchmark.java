@@ -0,0 +1,82 @@
+package io.github.javidaloca;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes to load a large FTL file into a new bundle, as happens on startup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(1)
+public class ResourceLoadingBenchmark {
+
+  // Roughly 5 KB, 0.5 MB and 5 MB of FTL
+  @Param({"50", "5000", "50000"})
+  public int messages;
+
+  private Path file;
+  private String source;
+  private FluentBundle bundle;
+
+  @Setup(Level.Trial)
+  public void createFile() throws IOException {
+    StringBuilder resource = new StringBuilder();
+    for (int i = 0; i < messages; i++) {
+      resource.append("message-").append(i).append(" = Hello { $name }, you have { $count ->\n")
+          .append("    [one] one new item\n")
+          .append("   *[other] { $count } new items\n")
+          .append(" }\n")
+          .append("    .title = Item overview for { $name }\n\n");
+    }
+    source = resource.toString();
+    file = Files.createTempFile("benchmark", ".ftl");
+    Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteFile() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Setup(Level.Iteration)
+  public void createBundle() {
+    bundle = FluentBundle.create(Locale.US);
+  }
+
+  @TearDown(Level.Iteration)
+  public void closeBundle() {
+    bundle.close();
+  }
+
+  @Benchmark
+  public FluentBundle path() throws IOException {
+    bundle.addResource(file, false);
+    return bundle;
+  }
+
+  @Benchmark
+  public FluentBundle inputStream() throws IOException {
+    try (InputStream stream = Files.newInputStream(file)) {
+      bundle.addResource(stream, false);
+    }
+    return bundle;
+  }
+
+  // The way resources had to be loaded before: decoding the file to a String first
+  @Benchmark
+  public FluentBundle string() throws IOException {
+    bundle.addResource(new String(Files.readAllBytes(file), StandardCharsets.UTF_8), false);
+    return bundle;
+  }
+}
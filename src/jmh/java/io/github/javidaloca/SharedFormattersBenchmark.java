@@ -0,0 +1,84 @@
+package io.github.javidaloca;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures creating a number of bundles for the same locale and formatting the first plural message in each,
+ * with and without {@link FluentBundle#create(List, boolean) shared formatters}.
+ * The growth of the resident set size (on Linux) is reported as an additional result.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(1)
+public class SharedFormattersBenchmark {
+
+  private static final List<Locale> LOCALES = Collections.singletonList(Locale.US);
+
+  @Param({"1", "50"})
+  public int bundles;
+
+  @Param({"true", "false"})
+  public boolean shareFormatters;
+
+  private final List<FluentBundle> created = new ArrayList<>();
+  private FluentArgs args;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    args = FluentArgs.create().insert("count", 3L);
+  }
+
+  @TearDown(Level.Iteration)
+  public void closeBundles() {
+    created.forEach(FluentBundle::close);
+    created.clear();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    args.close();
+  }
+
+  @Benchmark
+  public void createAndFormat(Memory memory) {
+    long before = residentKilobytes();
+    for (int i = 0; i < bundles; i++) {
+      FluentBundle bundle = FluentBundle.create(LOCALES, shareFormatters);
+      bundle.addResource("items = { $count ->\n    [one] One item\n   *[other] { $count } items\n}", false);
+      bundle.formatMessage("items", args);
+      created.add(bundle);
+    }
+    memory.residentKilobytes += residentKilobytes() - before;
+  }
+
+  // Reported per iteration next to the time
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Memory {
+    public long residentKilobytes;
+  }
+
+  private static long residentKilobytes() {
+    try {
+      String[] statm = new String(Files.readAllBytes(Paths.get("/proc/self/statm")), StandardCharsets.US_ASCII)
+          .trim().split(" ");
+      return Long.parseLong(statm[1]) * 4;
+    } catch (IOException | RuntimeException e) {
+      // Not available on this platform
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package io.github.javidaloca;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares loading a catalog of many commented FTL files from text with loading it from a snapshot.
+ * Run with the gc profiler (the default for this project) to compare allocations as well.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(1)
+public class SnapshotLoadingBenchmark {
+
+  @Param({"20", "200"})
+  public int files;
+
+  private List<Path> sources;
+  private Path snapshot;
+  private FluentBundle bundle;
+
+  @Setup(Level.Trial)
+  public void createFiles() throws IOException {
+    sources = new ArrayList<>(files);
+    for (int i = 0; i < files; i++) {
+      StringBuilder resource = new StringBuilder("### Resource ").append(i).append("\n\n");
+      for (int j = 0; j < 250; j++) {
+        resource.append("# Shown on the overview page, $name is the name of the user\n")
+            .append("message-").append(i).append('-').append(j)
+            .append(" = Hello { $name }, you have { $count ->\n")
+            .append("    [one] one new item\n")
+            .append("   *[other] { $count } new items\n")
+            .append(" }\n\n");
+      }
+      Path source = Files.createTempFile("benchmark", ".ftl");
+      Files.write(source, resource.toString().getBytes(StandardCharsets.UTF_8));
+      sources.add(source);
+    }
+    snapshot = Files.createTempFile("benchmark", ".ftls");
+    FluentSnapshot.compile(sources, snapshot);
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteFiles() throws IOException {
+    for (Path source : sources) {
+      Files.deleteIfExists(source);
+    }
+    Files.deleteIfExists(snapshot);
+  }
+
+  @Setup(Level.Iteration)
+  public void createBundle() {
+    bundle = FluentBundle.create(Locale.US);
+  }
+
+  @TearDown(Level.Iteration)
+  public void closeBundle() {
+    bundle.close();
+  }
+
+  @Benchmark
+  public FluentBundle sequentialText() throws IOException {
+    for (Path source : sources) {
+      bundle.addResource(source, false);
+    }
+    return bundle;
+  }
+
+  @Benchmark
+  public FluentBundle parallelText() throws IOException {
+    bundle.addResources(sources, false);
+    return bundle;
+  }
+
+  @Benchmark
+  public FluentBundle snapshot() throws IOException {
+    FluentSnapshot.load(bundle, snapshot, sources, false);
+    return bundle;
+  }
+}
@@ -0,0 +1,79 @@
+package io.github.javidaloca;
+
+/**
+ * A snapshot of what a {@link FluentBundle} holds in native memory.
+ *
+ * Byte counts are estimates: the source text of each resource is counted exactly, the parsed
+ * representation is approximated from the size of its nodes. Resources that have been
+ * {@link FluentBundle#addResourceLazily(java.nio.ByteBuffer, boolean) added lazily} are only counted
+ * once they have been loaded.
+ *
+ * @see FluentBundle#getStatistics()
+ * @see NativeStatistics
+ * @author Johnny_JayJay (https://www.github.com/JohnnyJayJay)
+ */
+public final class BundleStatistics {
+
+  private final long messageCount;
+  private final long termCount;
+  private final long resourceCount;
+  private final long sourceBytes;
+  private final long astBytes;
+
+  // values is laid out as [messages, terms, resources, source bytes, AST bytes]
+  BundleStatistics(long[] values) {
+    this.messageCount = values[0];
+    this.termCount = values[1];
+    this.resourceCount = values[2];
+    this.sourceBytes = values[3];
+    this.astBytes = values[4];
+  }
+
+  public long getMessageCount() {
+    return messageCount;
+  }
+
+  public long getTermCount() {
+    return termCount;
+  }
+
+  /**
+   * Returns the number of resources that have been added. Resources stay in memory even if all of their
+   * messages have been overridden.
+   */
+  public long getResourceCount() {
+    return resourceCount;
+  }
+
+  /**
+   * Returns the size of the source text of all resources in bytes (UTF-8).
+   */
+  public long getSourceBytes() {
+    return sourceBytes;
+  }
+
+  /**
+   * Returns the approximate size of the parsed representation of all resources in bytes.
+   */
+  public long getApproximateAstBytes() {
+    return astBytes;
+  }
+
+  /**
+   * Returns the approximate total size of all resources in bytes, i.e. source text plus parsed representation.
+   */
+  public long getApproximateBytes() {
+    return sourceBytes + astBytes;
+  }
+
+  @Override
+  public String toString() {
+    return "BundleStatistics{" +
+        "messages=" + messageCount +
+        ", terms=" + termCount +
+        ", resources=" + resourceCount +
+        ", sourceBytes=" + sourceBytes +
+        ", astBytes=" + astBytes +
+        '}';
+  }
+}
@@ -18,4 +18,10 @@ final class Checks {
     }
   }
 
+  static void checkState(boolean expr, String message) {
+    if (!expr) {
+      throw new IllegalStateException(message);
+    }
+  }
+
 }
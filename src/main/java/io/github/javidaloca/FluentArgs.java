@@ -3,28 +3,54 @@ package io.github.javidaloca;
 import javax.annotation.Nonnull;
 import java.util.*;
 
+import static io.github.javidaloca.Checks.checkState;
 import static io.github.javidaloca.Checks.notNull;
 
 /**
  * A utility class used to facilitate the creation of arguments for
  * {@link FluentBundle#formatMessage(String, Map)}.
  *
+ * Each instance is bound to a Rust {@code FluentArgs} map that is filled as values are inserted,
+ * so formatting with a {@code FluentArgs} object does not need to convert anything.
+ * Instances may be {@link #clear() cleared} and reused, e.g. once per thread.
+ *
+ * Numbers inserted via {@link #insert(String, double)} and its overloads only exist on the Rust side
+ * and do not create a {@link FluentNumber} object.
+ *
  * This class implements {@code Map<String, FluentValue>}.
- * Only insertion is supported and insertion may only be done via
+ * Only insertion and clearing is supported and insertion may only be done via
  * one of the {@code insert} methods or {@link #put(String, FluentValue)}.
+ * The inserted values are copied, i.e. they may be closed after insertion.
+ * The {@code Map} view is meant for compatibility and is not optimised; reading a number
+ * that was inserted as a primitive creates a {@code FluentNumber} for it.
  *
- * This map does not permit null keys or values.
+ * This map does not permit null keys or values. It is not thread safe.
  *
  * @author Johnny_JayJay (https://www.github.com/JohnnyJayJay)
  */
-public final class FluentArgs extends AbstractMap<String, FluentValue> {
+public final class FluentArgs extends RustObject implements Map<String, FluentValue> {
+
+  private static final int INITIAL_CAPACITY = 8;
 
-  private final Map<String, FluentValue> map;
+  // Arguments are few, so they are kept in insertion order and looked up linearly.
+  // An entry of values is either a FluentValue or, for numbers that were inserted as primitives,
+  // the FluentNumber.Options of the number in the same slot of numbers.
+  private String[] keys;
+  private Object[] values;
+  private double[] numbers;
+  private int size;
+  private Map<String, FluentValue> view;
 
   private FluentArgs() {
-    this.map = new HashMap<>();
+    this.keys = new String[INITIAL_CAPACITY];
+    this.values = new Object[INITIAL_CAPACITY];
+    this.numbers = new double[INITIAL_CAPACITY];
+    bind();
+    track();
   }
 
+  private native void bind();
+
   /**
    * Creates a new instance of FluentArgs.
    *
@@ -35,6 +61,19 @@ public final class FluentArgs extends AbstractMap<String, FluentValue> {
     return new FluentArgs();
   }
 
+  /**
+   * Returns the given map if it is a {@code FluentArgs} instance or a new {@code FluentArgs} instance with
+   * the same mappings otherwise. In the latter case, the caller is responsible for closing the new instance.
+   */
+  static FluentArgs from(Map<String, ? extends FluentValue> map) {
+    if (map instanceof FluentArgs) {
+      return (FluentArgs) map;
+    }
+    FluentArgs args = new FluentArgs();
+    args.putAll(map);
+    return args;
+  }
+
   /**
    * Inserts a floating point number value with the default {@link FluentNumber.Options number options}.
    *
@@ -42,6 +81,7 @@ public final class FluentArgs extends AbstractMap<String, FluentValue> {
    * @param value The value to be associated with the parameter.
    * @return this, for chaining
    * @throws IllegalArgumentException If the parameter name is {@code null}.
+   * @throws IllegalStateException If this instance has been closed.
    * @see FluentNumber#DEFAULT_OPTIONS
    * @see FluentNumber
    */
@@ -58,11 +98,53 @@ public final class FluentArgs extends AbstractMap<String, FluentValue> {
    * @param options The options to be used for the value.
    * @return this, for chaining
    * @throws IllegalArgumentException If the parameter name or the options are {@code null}.
+   * @throws IllegalStateException If this instance or the options have been closed.
    * @see FluentNumber
    */
   @Nonnull
   public FluentArgs insert(@Nonnull String parameter, double value, @Nonnull FluentNumber.Options options) {
-    return insert(parameter, FluentNumber.of(value, options));
+    notNull(parameter, "Parameter name");
+    notNull(options, "Options");
+    checkOpen();
+    checkState(!options.isClosed(), "Options have already been closed");
+    insertNumberRs(parameter, value, options);
+    set(parameter, options, value);
+    return this;
+  }
+
+  private native void insertNumberRs(String key, double value, FluentNumber.Options options);
+
+  /**
+   * Inserts an integral number value with the default {@link FluentNumber.Options number options}.
+   * Fluent represents all numbers as {@code double}s, so values beyond 2<sup>53</sup> lose precision.
+   *
+   * @param parameter The name of the parameter in the message.
+   * @param value The value to be associated with the parameter.
+   * @return this, for chaining
+   * @throws IllegalArgumentException If the parameter name is {@code null}.
+   * @throws IllegalStateException If this instance has been closed.
+   * @see #insert(String, double)
+   */
+  @Nonnull
+  public FluentArgs insert(@Nonnull String parameter, long value) {
+    return insert(parameter, (double) value, FluentNumber.DEFAULT_OPTIONS);
+  }
+
+  /**
+   * Inserts an integral number value with the provided {@link FluentNumber.Options number options}.
+   * Fluent represents all numbers as {@code double}s, so values beyond 2<sup>53</sup> lose precision.
+   *
+   * @param parameter The name of the parameter in the message.
+   * @param value The value to be associated with the parameter.
+   * @param options The options to be used for the value.
+   * @return this, for chaining
+   * @throws IllegalArgumentException If the parameter name or the options are {@code null}.
+   * @throws IllegalStateException If this instance or the options have been closed.
+   * @see #insert(String, double, FluentNumber.Options)
+   */
+  @Nonnull
+  public FluentArgs insert(@Nonnull String parameter, long value, @Nonnull FluentNumber.Options options) {
+    return insert(parameter, (double) value, options);
   }
 
   /**
@@ -72,6 +154,7 @@ public final class FluentArgs extends AbstractMap<String, FluentValue> {
    * @param value The value to be associated with the parameter.
    * @return this, for chaining
    * @throws IllegalArgumentException If the parameter name or the value is {@code null}.
+   * @throws IllegalStateException If this instance has been closed.
    * @see FluentString
    */
   @Nonnull
@@ -86,41 +169,199 @@ public final class FluentArgs extends AbstractMap<String, FluentValue> {
    * @param value The value to be associated with the parameter.
    * @return this, for chaining
    * @throws IllegalArgumentException If the parameter name or the value is {@code null}.
+   * @throws IllegalStateException If this instance or the value have been closed.
    */
   @Nonnull
   public FluentArgs insert(@Nonnull String parameter, @Nonnull FluentValue value) {
-    put(parameter, value);
+    notNull(parameter, "Parameter name");
+    notNull(value, "Value");
+    checkOpen();
+    checkState(!value.isClosed(), "Value has already been closed");
+    insertRs(parameter, value);
+    set(parameter, value, 0);
     return this;
   }
 
+  private native void insertRs(String key, FluentValue value);
+
+  private void set(String key, Object value, double number) {
+    int index = indexOf(key);
+    if (index < 0) {
+      if (size == keys.length) {
+        int capacity = size * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        values = Arrays.copyOf(values, capacity);
+        numbers = Arrays.copyOf(numbers, capacity);
+      }
+      index = size++;
+      keys[index] = key;
+    }
+    values[index] = value;
+    numbers[index] = number;
+    view = null;
+  }
+
+  private int indexOf(Object key) {
+    for (int i = 0; i < size; i++) {
+      if (keys[i].equals(key)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private FluentValue valueAt(int index) {
+    Object value = values[index];
+    if (value instanceof FluentValue) {
+      return (FluentValue) value;
+    }
+    FluentNumber number = FluentNumber.of(numbers[index], (FluentNumber.Options) value);
+    values[index] = number;
+    return number;
+  }
+
+  /**
+   * Returns an immutable snapshot of the current arguments that can be used as a key for cached
+   * {@link FormatCache results}, or {@code null} if any value is of a type that cannot be compared.
+   */
+  Object cacheKey() {
+    // Each argument takes three slots: its name, its String or Double value and its number options
+    Object[] snapshot = new Object[size * 3];
+    for (int i = 0; i < size; i++) {
+      Object value = values[i];
+      int slot = i * 3;
+      snapshot[slot] = keys[i];
+      if (value instanceof FluentString) {
+        snapshot[slot + 1] = ((FluentString) value).getValue();
+      } else if (value instanceof FluentNumber) {
+        snapshot[slot + 1] = ((FluentNumber) value).getValue();
+        snapshot[slot + 2] = ((FluentNumber) value).getOptions();
+      } else if (value instanceof FluentNumber.Options) {
+        snapshot[slot + 1] = numbers[i];
+        snapshot[slot + 2] = value;
+      } else {
+        return null;
+      }
+    }
+    return Arrays.asList(snapshot);
+  }
+
+  /**
+   * Returns the value of an argument formatted the way fluent would format it, or {@code null}
+   * if there is no such argument or its value cannot be formatted in Java.
+   *
+   * @see MessageTemplate
+   */
+  String formatValue(String key) {
+    int index = indexOf(key);
+    if (index < 0) {
+      return null;
+    }
+    Object value = values[index];
+    return value instanceof FluentNumber.Options
+        ? MessageTemplate.formatNumber(numbers[index], (FluentNumber.Options) value)
+        : MessageTemplate.formatValue((FluentValue) value);
+  }
+
+  private Map<String, FluentValue> view() {
+    if (view == null) {
+      Map<String, FluentValue> map = new LinkedHashMap<>();
+      for (int i = 0; i < size; i++) {
+        map.put(keys[i], valueAt(i));
+      }
+      view = Collections.unmodifiableMap(map);
+    }
+    return view;
+  }
+
   @Override
   public FluentValue put(@Nonnull String key, @Nonnull FluentValue value) {
-    return map.put(notNull(key, "Parameter name"), notNull(value, "Value"));
+    FluentValue previous = get(key);
+    insert(key, value);
+    return previous;
+  }
+
+  @Override
+  public void putAll(@Nonnull Map<? extends String, ? extends FluentValue> m) {
+    m.forEach(this::insert);
+  }
+
+  /**
+   * Removes all values from this instance so that it can be reused.
+   *
+   * @throws IllegalStateException If this instance has been closed.
+   */
+  @Override
+  public void clear() {
+    checkOpen();
+    clearRs();
+    Arrays.fill(keys, 0, size, null);
+    Arrays.fill(values, 0, size, null);
+    size = 0;
+    view = null;
+  }
+
+  private native void clearRs();
+
+  @Override
+  public FluentValue remove(Object key) {
+    throw new UnsupportedOperationException("Values cannot be removed from FluentArgs");
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
   }
 
   @Override
   public FluentValue get(Object key) {
-    return map.get(key);
+    int index = indexOf(key);
+    return index < 0 ? null : valueAt(index);
   }
 
   @Override
   public boolean containsKey(Object key) {
-    return map.containsKey(key);
+    return indexOf(key) >= 0;
+  }
+
+  @Override
+  public boolean containsValue(Object value) {
+    return view().containsValue(value);
   }
 
   @Override
   public Set<String> keySet() {
-    return Collections.unmodifiableSet(map.keySet());
+    return view().keySet();
   }
 
   @Override
   public Collection<FluentValue> values() {
-    return Collections.unmodifiableCollection(map.values());
+    return view().values();
   }
 
   @Override
   public Set<Entry<String, FluentValue>> entrySet() {
-    return Collections.unmodifiableSet(map.entrySet());
+    return view().entrySet();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o == this || view().equals(o);
+  }
+
+  @Override
+  public int hashCode() {
+    return view().hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return view().toString();
   }
 
 }
@@ -1,13 +1,26 @@
 package io.github.javidaloca;
 
 import javax.annotation.Nonnull;
-import java.io.ByteArrayOutputStream;
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
 
 import static io.github.javidaloca.Checks.check;
 import static io.github.javidaloca.Checks.notNull;
@@ -24,17 +37,33 @@ import static io.github.javidaloca.Checks.notNull;
  * The methods of this class delegate to functions of the corresponding Rust type, {@code FluentBundle}.
  * Each Java FluentBundle object is bound to a Rust FluentBundle.
  *
- * This class is thread safe.
+ * This class is thread safe. Formatting messages and looking them up may happen on any number of
+ * threads in parallel; only adding resources and {@link #setUseIsolating(boolean) changing the isolation}
+ * require exclusive access to the bundle and will briefly block other threads.
  *
  * @author Johnny_JayJay (https://www.github.com/JohnnyJayJay)
  */
 public final class FluentBundle extends RustObject {
 
+  // Messages are formatted into this buffer before they are appended to a caller's StringBuilder or Appendable
+  private static final ThreadLocal<char[]> CHAR_BUFFER = ThreadLocal.withInitial(() -> new char[256]);
+  private static final int READ_CHUNK_SIZE = 8192;
+  private static final long MAPPING_THRESHOLD = 64 * 1024;
+
   private final List<Locale> locales;
+  private volatile FormatCache cache;
+  private volatile FormatInstrumentation instrumentation;
+  // Functions may return something different each time, e.g. the current time, so their results are not cached
+  private volatile boolean hasFunctions;
+  private final LazyResources lazyResources = new LazyResources(this);
+  // Simple messages that are formatted without calling into Rust, updated under its own lock
+  private final Map<String, MessageTemplate> templates = new ConcurrentHashMap<>();
+  private volatile boolean useIsolating = true;
 
-  private FluentBundle(List<Locale> locales) {
+  private FluentBundle(List<Locale> locales, boolean shareFormatters) {
     this.locales = Collections.unmodifiableList(new ArrayList<>(locales));
-    bind(this.locales);
+    bind(this.locales, shareFormatters);
+    track();
   }
 
   /**
@@ -53,23 +82,43 @@ public final class FluentBundle extends RustObject {
   /**
    * Creates a new bundle based on the given fallback locales.
    *
+   * The plural rules and other locale specific formatting data of the bundle are shared with all other bundles
+   * whose first locale is the same, so they are only created and warmed up once per locale.
+   *
    * @param locales A list of locales to use.
    * @return A new {@code FluentBundle}.
    * @throws InvalidLocaleException If a locale cannot be converted to a Rust LanguageIdentifier.
    * @throws IllegalArgumentException If the list or any locale in the list is null or if the list is empty.
+   * @see #create(List, boolean)
    */
   public static FluentBundle create(List<Locale> locales) {
+    return create(locales, true);
+  }
+
+  /**
+   * Creates a new bundle based on the given fallback locales.
+   *
+   * @param locales A list of locales to use.
+   * @param shareFormatters Whether the plural rules and other locale specific formatting data of the bundle should be
+   *                        shared with other bundles whose first locale is the same. Bundles that do not share them
+   *                        never wait for other bundles while formatting, but create their own data when
+   *                        they are first needed.
+   * @return A new {@code FluentBundle}.
+   * @throws InvalidLocaleException If a locale cannot be converted to a Rust LanguageIdentifier.
+   * @throws IllegalArgumentException If the list or any locale in the list is null or if the list is empty.
+   */
+  public static FluentBundle create(List<Locale> locales, boolean shareFormatters) {
     notNull(locales, "Locale list");
     check(!locales.isEmpty(), "Must provide at least one locale");
     check(locales.stream().noneMatch(Objects::isNull), "No locale in the list may be null");
-    return new FluentBundle(locales);
+    return new FluentBundle(locales, shareFormatters);
   }
 
-  private native void bind(List<Locale> locales);
+  private native void bind(List<Locale> locales, boolean shareFormatters);
 
   /**
    * Adds a resource by consuming all bytes from the given {@code InputStream}
-   * and creating a UTF-8 encoded String from them. The given stream will not be closed by this method,
+   * and decoding them as UTF-8. The given stream will not be closed by this method,
    * so it should be wrapped in a try-with-resources block or similar on the user end.
    *
    * @param resource An {@code InputStream} obtained from somewhere, e.g.
@@ -78,43 +127,228 @@ public final class FluentBundle extends RustObject {
    *                 that already exists.
    * @throws IllegalArgumentException If the InputStream is {@code null}.
    * @throws IOException If an I/O problem with the InputStream occurs.
-   * @throws ParseException If the String created from the InputStream is invalid FTL.
+   * @throws ParseException If the content of the InputStream is invalid FTL.
    * @throws OverrideException If {@code override} is {@code false} and the resource contains
    *                           one or more messages that already exist.
+   * @throws IllegalStateException If this bundle has been closed.
    * @see #addResource(String, boolean)
    */
   public void addResource(@Nonnull InputStream resource, boolean override) throws IOException {
     notNull(resource, "Resource InputStream");
-    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-    int next;
-    while ((next = resource.read()) != -1) {
-      bytes.write(next);
+    long start = System.nanoTime();
+    byte[] bytes = new byte[READ_CHUNK_SIZE];
+    int length = 0;
+    int read;
+    while ((read = resource.read(bytes, length, bytes.length - length)) != -1) {
+      length += read;
+      if (length == bytes.length) {
+        bytes = Arrays.copyOf(bytes, bytes.length * 2);
+      }
+    }
+    checkOpen();
+    lazyResources.loadAll();
+    try {
+      addResourceArrayRs(bytes, 0, length, override);
+    } finally {
+      resourcesAdded(1, start);
     }
-    addResource(new String(bytes.toByteArray(), StandardCharsets.UTF_8), override);
   }
 
   /**
-   * Adds a resource by consuming all bytes from the given resource file and creating a
-   * UTF-8 encoded String from them.
+   * Adds a resource by reading the given resource file and decoding it as UTF-8.
+   * Large files are memory-mapped and handed to the parser without being copied to the Java heap.
    *
    * @param resource A {@code java.nio.file.Path} pointing to a file that contains valid FTL text.
    * @param override Whether the resource should override messages when encountering a message id
    *                 that already exists.
    * @throws IllegalArgumentException If the Path is {@code null}.
-   * @throws IOException If an I/O problem with the file occurs
+   * @throws IOException If an I/O problem with the file occurs or if the file is larger than 2 GB.
    * @throws ParseException If the file content is invalid FTL.
    * @throws OverrideException If {@code override} is {@code false} and the resource contains
    *                           one or more messages that already exist.
+   * @throws IllegalStateException If this bundle has been closed.
    * @see java.nio.file.Paths#get(String, String...)
    * @see #addResource(String, boolean)
    */
   public void addResource(@Nonnull Path resource, boolean override) throws IOException {
-    addResource(new String(
-        Files.readAllBytes(notNull(resource, "Resource Path")),
-        StandardCharsets.UTF_8
-    ), override);
+    addResource(read(notNull(resource, "Resource Path")), override);
+  }
+
+  /**
+   * Adds several resource files at once. The files are read and parsed in parallel on the
+   * {@link ForkJoinPool#commonPool() common pool} and then added to this bundle in iteration order.
+   *
+   * @param resources The {@code java.nio.file.Path}s of the files, each containing valid FTL text.
+   * @param override Whether the resources should override messages when encountering a message id
+   *                 that already exists.
+   * @throws IllegalArgumentException If the collection or any path in it is {@code null}.
+   * @throws IOException If an I/O problem with any of the files occurs.
+   * @throws ParseException If any file content is invalid FTL. Errors of further files are suppressed
+   *                        by the exception. No resource is added in that case.
+   * @throws OverrideException If {@code override} is {@code false} and the resources contain
+   *                           one or more messages that already exist or that exist in more than one resource.
+   *                           All overrides are reported together.
+   * @throws IllegalStateException If this bundle has been closed.
+   * @see #addResources(Collection, boolean, Executor)
+   */
+  public void addResources(@Nonnull Collection<Path> resources, boolean override) throws IOException {
+    addResources(resources, override, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Adds several resource files at once. The files are read and parsed in parallel using the given
+   * {@code Executor} and then added to this bundle in iteration order.
+   *
+   * @param resources The {@code java.nio.file.Path}s of the files, each containing valid FTL text.
+   * @param override Whether the resources should override messages when encountering a message id
+   *                 that already exists.
+   * @param executor The executor to read and parse the files on.
+   * @throws IllegalArgumentException If the collection, any path in it or the executor is {@code null}.
+   * @throws IOException If an I/O problem with any of the files occurs.
+   * @throws ParseException If any file content is invalid FTL. Errors of further files are suppressed
+   *                        by the exception. No resource is added in that case.
+   * @throws OverrideException If {@code override} is {@code false} and the resources contain
+   *                           one or more messages that already exist or that exist in more than one resource.
+   *                           All overrides are reported together.
+   * @throws IllegalStateException If this bundle has been closed.
+   */
+  public void addResources(@Nonnull Collection<Path> resources, boolean override,
+                           @Nonnull Executor executor) throws IOException {
+    notNull(resources, "Resource Paths");
+    notNull(executor, "Executor");
+    check(resources.stream().noneMatch(Objects::isNull), "No path in the collection may be null");
+    List<ResourceReader> readers = new ArrayList<>(resources.size());
+    for (Path path : resources) {
+      readers.add(() -> read(path));
+    }
+    addResources(readers, override, executor);
+  }
+
+  /**
+   * Adds the remaining bytes of each buffer as a resource, parsing them in parallel.
+   *
+   * @see #addResources(Collection, boolean)
+   */
+  void addBuffers(List<ByteBuffer> resources, boolean override) {
+    List<ResourceReader> readers = new ArrayList<>(resources.size());
+    for (ByteBuffer buffer : resources) {
+      readers.add(() -> buffer);
+    }
+    try {
+      addResources(readers, override, ForkJoinPool.commonPool());
+    } catch (IOException e) {
+      // The buffers are already in memory
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private interface ResourceReader {
+    ByteBuffer read() throws IOException;
+  }
+
+  private void addResources(List<ResourceReader> readers, boolean override, Executor executor) throws IOException {
+    checkOpen();
+    long start = System.nanoTime();
+    lazyResources.loadAll();
+    List<CompletableFuture<ParsedResource>> futures = new ArrayList<>(readers.size());
+    for (ResourceReader reader : readers) {
+      futures.add(CompletableFuture.supplyAsync(() -> {
+        try {
+          return new ParsedResource(reader.read());
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }, executor));
+    }
+    ParsedResource[] parsed = new ParsedResource[futures.size()];
+    // Either an IOException or a RuntimeException, with all further failures suppressed by it
+    Exception failure = null;
+    for (int i = 0; i < parsed.length; i++) {
+      try {
+        parsed[i] = futures.get(i).join();
+      } catch (CompletionException e) {
+        Exception cause;
+        if (e.getCause() instanceof UncheckedIOException) {
+          cause = ((UncheckedIOException) e.getCause()).getCause();
+        } else {
+          cause = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+        if (failure == null) {
+          failure = cause;
+        } else {
+          failure.addSuppressed(cause);
+        }
+      }
+    }
+    try {
+      if (failure instanceof IOException) {
+        throw (IOException) failure;
+      } else if (failure != null) {
+        throw (RuntimeException) failure;
+      }
+      addResourcesRs(parsed, override);
+    } finally {
+      resourcesAdded(parsed.length, start);
+      for (ParsedResource resource : parsed) {
+        if (resource != null) {
+          resource.close();
+        }
+      }
+    }
+  }
+
+  private native void addResourcesRs(ParsedResource[] resources, boolean override);
+
+  // Small files are read to the heap, larger ones are memory-mapped since that has a fixed cost
+  static ByteBuffer read(Path resource) throws IOException {
+    long size = Files.size(resource);
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("Resource file is too large: " + resource);
+    }
+    if (size < MAPPING_THRESHOLD) {
+      return ByteBuffer.wrap(Files.readAllBytes(resource));
+    }
+    try (FileChannel channel = FileChannel.open(resource, StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
   }
 
+  /**
+   * Adds a resource by decoding the remaining bytes of the given buffer as UTF-8.
+   * The content of direct buffers is copied once into a native string, without creating a Java {@code String}
+   * in between. The position of the buffer is not changed.
+   *
+   * @param resource A buffer containing FTL text, e.g. a memory-mapped file.
+   * @param override Whether the resource should override messages when encountering a message id
+   *                 that already exists.
+   * @throws IllegalArgumentException If the buffer is {@code null} or if it is neither direct nor backed by an array.
+   * @throws ParseException If the content of the buffer is invalid FTL.
+   * @throws OverrideException If {@code override} is {@code false} and the resource contains
+   *                           one or more messages that already exist.
+   * @throws IllegalStateException If this bundle has been closed.
+   * @see #addResource(String, boolean)
+   */
+  public void addResource(@Nonnull ByteBuffer resource, boolean override) {
+    notNull(resource, "Resource ByteBuffer");
+    check(resource.isDirect() || resource.hasArray(), "Buffer must be direct or accessible via array()");
+    checkOpen();
+    lazyResources.loadAll();
+    long start = System.nanoTime();
+    try {
+      if (resource.isDirect()) {
+        addResourceBufferRs(resource, resource.position(), resource.remaining(), override);
+      } else {
+        addResourceArrayRs(resource.array(), resource.arrayOffset() + resource.position(), resource.remaining(), override);
+      }
+    } finally {
+      resourcesAdded(1, start);
+    }
+  }
+
+  private native void addResourceArrayRs(byte[] resource, int offset, int length, boolean override);
+
+  private native void addResourceBufferRs(ByteBuffer resource, int position, int remaining, boolean override);
+
   /**
    * Adds a resource by parsing the given String to an FTL-Resource.
    *
@@ -125,49 +359,631 @@ public final class FluentBundle extends RustObject {
    * @throws ParseException If the String is invalid FTL.
    * @throws OverrideException If {@code override} is {@code false} and the resource contains
    *                           one or more messages that already exist.
+   * @throws IllegalStateException If this bundle has been closed.
    * @see https://projectfluent.org/fluent/guide/
    */
   public void addResource(@Nonnull String resource, boolean override) {
-    addResourceRs(notNull(resource, "FTL string"), override);
+    checkOpen();
+    lazyResources.loadAll();
+    long start = System.nanoTime();
+    try {
+      addResourceRs(notNull(resource, "FTL string"), override);
+    } finally {
+      // Even a failed override may have added some messages
+      resourcesAdded(1, start);
+    }
   }
 
   private native void addResourceRs(String resource, boolean override);
 
+  /**
+   * Registers a resource without parsing it. The resource is only parsed and added to this bundle once
+   * one of the messages it defines is requested, e.g. by {@link #formatMessage(String, Map)} or
+   * {@link #hasMessage(String)}, or when a resource is added to this bundle eagerly.
+   * Apart from that, this behaves like adding all resources in the order they were registered.
+   *
+   * Since the resource is not parsed, the ids of its messages and terms are found by a simple scan.
+   * Syntax errors are only reported when the resource is parsed, once, by the method that caused it.
+   * A resource with syntax errors is dropped afterwards, just like it would not have been added eagerly.
+   *
+   * @param resource A buffer containing FTL text. Its content must not be changed afterwards.
+   * @param override Whether the resource should override messages when encountering a message id
+   *                 that already exists.
+   * @throws IllegalArgumentException If the buffer is {@code null} or if it is neither direct nor backed by an array.
+   * @throws OverrideException If {@code override} is {@code false} and the resource contains
+   *                           one or more messages that already exist. All other messages are still registered.
+   * @throws IllegalStateException If this bundle has been closed.
+   * @see #addResource(ByteBuffer, boolean)
+   */
+  public void addResourceLazily(@Nonnull ByteBuffer resource, boolean override) {
+    notNull(resource, "Resource ByteBuffer");
+    check(resource.isDirect() || resource.hasArray(), "Buffer must be direct or accessible via array()");
+    checkOpen();
+    lazyResources.add(resource.slice(), override);
+  }
+
+  /**
+   * Registers a resource file without parsing it. Large files are memory-mapped.
+   *
+   * @param resource A {@code java.nio.file.Path} pointing to a file that contains valid FTL text.
+   * @param override Whether the resource should override messages when encountering a message id
+   *                 that already exists.
+   * @throws IllegalArgumentException If the Path is {@code null}.
+   * @throws IOException If an I/O problem with the file occurs or if the file is larger than 2 GB.
+   * @throws OverrideException If {@code override} is {@code false} and the resource contains
+   *                           one or more messages that already exist. All other messages are still registered.
+   * @throws IllegalStateException If this bundle has been closed.
+   * @see #addResourceLazily(ByteBuffer, boolean)
+   */
+  public void addResourceLazily(@Nonnull Path resource, boolean override) throws IOException {
+    addResourceLazily(read(notNull(resource, "Resource Path")), override);
+  }
+
+  /**
+   * Adds a resource that was parsed on behalf of this bundle.
+   */
+  void addParsed(ParsedResource resource, boolean override) {
+    long start = System.nanoTime();
+    try {
+      addResourcesRs(new ParsedResource[] { resource }, override);
+    } finally {
+      resourcesAdded(1, start);
+    }
+  }
+
+  /**
+   * Makes sure that a lazily added resource that defines the given message id has been added.
+   */
+  void ensureLoaded(String id) {
+    lazyResources.ensureLoaded(id);
+  }
+
   /**
    * Returns whether a message with the given id exists in this resource.
    *
    * @param id The message id to check.
    * @return {@code true} if this bundle contains the message, {@code false} if not.
    * @throws IllegalArgumentException If the message id is {@code null}.
+   * @throws IllegalStateException If this bundle has been closed.
    */
   public boolean hasMessage(@Nonnull String id) {
-    return hasMessageRs(notNull(id, "Message id"));
+    checkOpen();
+    lazyResources.ensureLoaded(notNull(id, "Message id"));
+    return hasMessageRs(id);
   }
 
-  private native boolean hasMessageRs(String id);
+  native boolean hasMessageRs(String id);
+
+  native boolean hasTermRs(String id);
+
+  /**
+   * Looks up a message once and returns a handle that can be used to format it repeatedly.
+   * This saves the id lookup on every call for messages that are formatted often.
+   *
+   * @param id The message id.
+   * @return An Optional containing a handle for the message or an empty Optional if this bundle
+   *         does not contain a message with the given id.
+   * @throws IllegalArgumentException If the message id is {@code null}.
+   * @throws IllegalStateException If this bundle has been closed.
+   * @see FluentMessage
+   */
+  @Nonnull
+  public Optional<FluentMessage> message(@Nonnull String id) {
+    return hasMessage(id) ? Optional.of(new FluentMessage(this, id)) : Optional.empty();
+  }
 
   /**
    * Formats a message from this bundle by its id with the given arguments.
    *
+   * Messages that consist only of text and variables are formatted in Java if their arguments are
+   * strings or integral numbers with the default options. All other messages are formatted by fluent.
+   *
    * @param id The identifier of the message to be formatted.
    * @param arguments The arguments for that message. A {@code Map} of variable name -> value.
+   *                  Passing a {@link FluentArgs} instance is the most efficient, other maps are copied.
    * @return An Optional containing the formatted message value or an empty Optional if no
-   *         message with the given id could be found.
+   *         message with the given id could be found or if the message does not have a value.
    * @throws IllegalArgumentException If the id or the argument map are {@code null} or
    *                                  if any keys or values in the map are null.
+   * @throws IllegalStateException If this bundle or the arguments have been closed.
    * @throws MessageFormatException If the message could not be formatted
    *                                (e.g. because of missing arguments)
    * @see FluentArgs
+   * @see #setFormatCache(FormatCache)
+   * @see #formatMessageWithAttributes(String, Map)
    */
   @Nonnull
   public Optional<String> formatMessage(@Nonnull String id, @Nonnull Map<String, ? extends FluentValue> arguments) {
+    checkOpen();
+    lazyResources.ensureLoaded(notNull(id, "Message id"));
     notNull(arguments, "Arguments");
-    check(arguments.entrySet().stream().noneMatch((entry) -> entry.getKey() == null || entry.getValue() == null),
-        "Argument map must not contain null keys or values");
-    return Optional.ofNullable(formatMessageRs(notNull(id, "Message id"), arguments));
+    FormatInstrumentation instrumentation = this.instrumentation;
+    if (instrumentation == null) {
+      return format(id, arguments, null);
+    }
+    return instrument(instrumentation, id, () -> format(id, arguments, instrumentation));
   }
 
-  private native String formatMessageRs(String id, Map<String, ? extends FluentValue> arguments);
+  private Optional<String> format(String id, Map<String, ? extends FluentValue> arguments,
+                                  FormatInstrumentation instrumentation) {
+    MessageTemplate template = templates.get(id);
+    if (template != null && isUsable(arguments)) {
+      String result = template.format(arguments, useIsolating);
+      if (result != null) {
+        return Optional.of(result);
+      }
+    }
+    FluentArgs args = FluentArgs.from(arguments);
+    try {
+      args.checkOpen();
+      FormatCache cache = this.cache;
+      Object key = cache == null || hasFunctions ? null : FormatCache.key(id, args);
+      if (key == null) {
+        return Optional.ofNullable(formatMessageRs(id, args, instrumentation));
+      }
+      Optional<String> result = cache.get(key);
+      if (result == null) {
+        long generation = cache.generation();
+        result = Optional.ofNullable(formatMessageRs(id, args, instrumentation));
+        cache.put(key, result, generation);
+      }
+      return result;
+    } finally {
+      if (args != arguments) {
+        args.close();
+      }
+    }
+  }
+
+  // Invalid arguments are left to the regular path, which reports them
+  private static boolean isUsable(Map<String, ? extends FluentValue> arguments) {
+    if (arguments instanceof FluentArgs) {
+      return !((FluentArgs) arguments).isClosed();
+    }
+    for (Map.Entry<String, ? extends FluentValue> entry : arguments.entrySet()) {
+      if (entry.getKey() == null || entry.getValue() == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private String formatMessageRs(String id, FluentArgs arguments, FormatInstrumentation instrumentation) {
+    if (instrumentation != null) {
+      instrumentation.nativeCall();
+    }
+    return NativeBackend.get().formatMessage(this, id, arguments);
+  }
+
+  native String formatMessageRs(String id, FluentArgs arguments);
+
+  // Reports the outcome of a format call that returns an empty Optional if the message has no result
+  <T> Optional<T> instrument(FormatInstrumentation instrumentation, String id, Supplier<Optional<T>> format) {
+    long start = System.nanoTime();
+    Optional<T> result;
+    try {
+      result = format.get();
+    } catch (MessageFormatException e) {
+      instrumentation.formatFailed(id, e);
+      throw e;
+    }
+    formatted(instrumentation, id, System.nanoTime() - start, !result.isPresent());
+    return result;
+  }
+
+  // Reports the outcome of a format call that returns -1 if the message has no result
+  private int instrumentLength(FormatInstrumentation instrumentation, String id, IntSupplier format) {
+    long start = System.nanoTime();
+    int length;
+    try {
+      length = format.getAsInt();
+    } catch (MessageFormatException e) {
+      instrumentation.formatFailed(id, e);
+      throw e;
+    }
+    formatted(instrumentation, id, System.nanoTime() - start, length < 0);
+    return length;
+  }
+
+  private void formatted(FormatInstrumentation instrumentation, String id, long nanos, boolean empty) {
+    instrumentation.messageFormatted(id, nanos);
+    if (empty && !hasMessageRs(id)) {
+      instrumentation.messageMissing(id);
+    }
+  }
+
+  // The instrumentation of this bundle or null, read once per call
+  FormatInstrumentation instrumentation() {
+    return instrumentation;
+  }
+
+  // Formats the message with the given id from the first of the bundles that contains it
+  static native String formatFirstRs(FluentBundle[] bundles, String id, FluentArgs arguments);
+
+  /**
+   * Formats an attribute of a message from this bundle with the given arguments.
+   *
+   * @param id The identifier of the message.
+   * @param attribute The name of the attribute to be formatted, e.g. {@code "title"}.
+   * @param arguments The arguments for that attribute. A {@code Map} of variable name -> value.
+   * @return An Optional containing the formatted attribute or an empty Optional if no
+   *         message with the given id could be found or if the message does not have that attribute.
+   * @throws IllegalArgumentException If any argument is {@code null} or if any keys or values in the map are null.
+   * @throws IllegalStateException If this bundle or the arguments have been closed.
+   * @throws MessageFormatException If the attribute could not be formatted
+   *                                (e.g. because of missing arguments)
+   */
+  @Nonnull
+  public Optional<String> formatAttribute(@Nonnull String id, @Nonnull String attribute,
+                                          @Nonnull Map<String, ? extends FluentValue> arguments) {
+    checkOpen();
+    lazyResources.ensureLoaded(notNull(id, "Message id"));
+    notNull(attribute, "Attribute name");
+    FormatInstrumentation instrumentation = this.instrumentation;
+    if (instrumentation == null) {
+      return formatAttribute(id, attribute, arguments, null);
+    }
+    return instrument(instrumentation, id, () -> formatAttribute(id, attribute, arguments, instrumentation));
+  }
+
+  private Optional<String> formatAttribute(String id, String attribute, Map<String, ? extends FluentValue> arguments,
+                                           FormatInstrumentation instrumentation) {
+    FluentArgs args = FluentArgs.from(notNull(arguments, "Arguments"));
+    try {
+      args.checkOpen();
+      if (instrumentation != null) {
+        instrumentation.nativeCall();
+      }
+      return Optional.ofNullable(formatAttributeRs(id, attribute, args));
+    } finally {
+      if (args != arguments) {
+        args.close();
+      }
+    }
+  }
+
+  private native String formatAttributeRs(String id, String attribute, FluentArgs arguments);
+
+  /**
+   * Formats the value and all attributes of a message from this bundle with the given arguments.
+   * This is cheaper than formatting them one by one, since the message is only looked up
+   * and the arguments are only converted once.
+   *
+   * @param id The identifier of the message to be formatted.
+   * @param arguments The arguments for that message. A {@code Map} of variable name -> value.
+   * @return An Optional containing the formatted message or an empty Optional if no
+   *         message with the given id could be found.
+   * @throws IllegalArgumentException If the id or the argument map are {@code null} or
+   *                                  if any keys or values in the map are null.
+   * @throws IllegalStateException If this bundle or the arguments have been closed.
+   * @throws MessageFormatException If the value or any attribute could not be formatted
+   *                                (e.g. because of missing arguments)
+   * @see FormattedMessage
+   */
+  @Nonnull
+  public Optional<FormattedMessage> formatMessageWithAttributes(@Nonnull String id,
+                                                                @Nonnull Map<String, ? extends FluentValue> arguments) {
+    checkOpen();
+    lazyResources.ensureLoaded(notNull(id, "Message id"));
+    FormatInstrumentation instrumentation = this.instrumentation;
+    if (instrumentation == null) {
+      return formatWithAttributes(id, arguments, null);
+    }
+    return instrument(instrumentation, id, () -> formatWithAttributes(id, arguments, instrumentation));
+  }
+
+  private Optional<FormattedMessage> formatWithAttributes(String id, Map<String, ? extends FluentValue> arguments,
+                                                          FormatInstrumentation instrumentation) {
+    FluentArgs args = FluentArgs.from(notNull(arguments, "Arguments"));
+    try {
+      args.checkOpen();
+      if (instrumentation != null) {
+        instrumentation.nativeCall();
+      }
+      String[] result = formatWithAttributesRs(id, args);
+      return result == null ? Optional.empty() : Optional.of(new FormattedMessage(id, result));
+    } finally {
+      if (args != arguments) {
+        args.close();
+      }
+    }
+  }
+
+  private native String[] formatWithAttributesRs(String id, FluentArgs arguments);
+
+  /**
+   * Formats a message from this bundle by its id with the given arguments and appends the result
+   * to the given {@code StringBuilder}. Unlike {@link #formatMessage(String, Map)}, this does not
+   * create any intermediate {@code String} or {@code Optional}.
+   *
+   * @param id The identifier of the message to be formatted.
+   * @param arguments The arguments for that message. A {@code Map} of variable name -> value.
+   * @param target The {@code StringBuilder} to append the formatted message to.
+   * @return The number of chars that were appended or {@code -1} if no message with the given id could be found
+   *         or if the message does not have a value.
+   * @throws IllegalArgumentException If the id, the argument map or the target are {@code null} or
+   *                                  if any keys or values in the map are null.
+   * @throws IllegalStateException If this bundle or the arguments have been closed.
+   * @throws MessageFormatException If the message could not be formatted
+   *                                (e.g. because of missing arguments)
+   */
+  public int formatMessage(@Nonnull String id, @Nonnull Map<String, ? extends FluentValue> arguments,
+                           @Nonnull StringBuilder target) {
+    notNull(target, "Target");
+    int length = formatToCharBuffer(id, arguments);
+    if (length > 0) {
+      target.append(CHAR_BUFFER.get(), 0, length);
+    }
+    return length;
+  }
+
+  /**
+   * Formats a message from this bundle by its id with the given arguments and appends the result
+   * to the given {@code Appendable}.
+   *
+   * @param id The identifier of the message to be formatted.
+   * @param arguments The arguments for that message. A {@code Map} of variable name -> value.
+   * @param target The {@code Appendable} to append the formatted message to.
+   * @return The number of chars that were appended or {@code -1} if no message with the given id could be found
+   *         or if the message does not have a value.
+   * @throws IOException If the {@code Appendable} throws one.
+   * @throws IllegalArgumentException If the id, the argument map or the target are {@code null} or
+   *                                  if any keys or values in the map are null.
+   * @throws IllegalStateException If this bundle or the arguments have been closed.
+   * @throws MessageFormatException If the message could not be formatted
+   *                                (e.g. because of missing arguments)
+   * @see #formatMessage(String, Map, StringBuilder)
+   */
+  public int formatMessage(@Nonnull String id, @Nonnull Map<String, ? extends FluentValue> arguments,
+                           @Nonnull Appendable target) throws IOException {
+    notNull(target, "Target");
+    if (target instanceof StringBuilder) {
+      return formatMessage(id, arguments, (StringBuilder) target);
+    }
+    int length = formatToCharBuffer(id, arguments);
+    if (length > 0) {
+      target.append(CharBuffer.wrap(CHAR_BUFFER.get(), 0, length));
+    }
+    return length;
+  }
+
+  // Formats into the CHAR_BUFFER of the current thread, growing it if necessary
+  private int formatToCharBuffer(String id, Map<String, ? extends FluentValue> arguments) {
+    checkOpen();
+    lazyResources.ensureLoaded(notNull(id, "Message id"));
+    notNull(arguments, "Arguments");
+    FormatInstrumentation instrumentation = this.instrumentation;
+    if (instrumentation == null) {
+      return formatToChars(id, arguments, null);
+    }
+    return instrumentLength(instrumentation, id, () -> formatToChars(id, arguments, instrumentation));
+  }
+
+  private int formatToChars(String id, Map<String, ? extends FluentValue> arguments,
+                            FormatInstrumentation instrumentation) {
+    FluentArgs args = FluentArgs.from(arguments);
+    try {
+      args.checkOpen();
+      char[] buffer = CHAR_BUFFER.get();
+      int length = formatToCharsRs(id, args, buffer, instrumentation);
+      // The buffer only grows, so this is rare after the first few calls on a thread
+      if (length > buffer.length) {
+        buffer = new char[length];
+        CHAR_BUFFER.set(buffer);
+        // The native side still holds the result for this thread, so it is copied instead of formatted again
+        copyCharsRs(buffer);
+      }
+      return length;
+    } finally {
+      if (args != arguments) {
+        args.close();
+      }
+    }
+  }
+
+  private int formatToCharsRs(String id, FluentArgs arguments, char[] target, FormatInstrumentation instrumentation) {
+    if (instrumentation != null) {
+      instrumentation.nativeCall();
+    }
+    return formatToCharsRs(id, arguments, target);
+  }
+
+  private native int formatToCharsRs(String id, FluentArgs arguments, char[] target);
+
+  // Copies the result of the last formatToCharsRs call on this thread, which did not fit into its target
+  private static native void copyCharsRs(char[] target);
+
+  /**
+   * Formats a message from this bundle by its id with the given arguments and writes the result
+   * as UTF-8 to the given {@code ByteBuffer}, starting at its current position. Direct buffers
+   * are written to without any intermediate copy.
+   *
+   * If the message fits into the remaining space of the buffer, the position of the buffer
+   * is advanced by the number of bytes written. Otherwise, the buffer is left unchanged.
+   *
+   * @param id The identifier of the message to be formatted.
+   * @param arguments The arguments for that message. A {@code Map} of variable name -> value.
+   * @param target The buffer to write the formatted message to.
+   * @return The number of bytes that were written or {@code -1} if no message with the given id could be found
+   *         or if the message does not have a value.
+   * @throws IllegalArgumentException If the id, the argument map or the target are {@code null} or
+   *                                  if any keys or values in the map are null.
+   * @throws IllegalStateException If this bundle or the arguments have been closed.
+   * @throws ReadOnlyBufferException If the buffer is read-only.
+   * @throws BufferOverflowException If the formatted message does not fit into the remaining space of the buffer.
+   * @throws MessageFormatException If the message could not be formatted
+   *                                (e.g. because of missing arguments)
+   */
+  public int formatMessage(@Nonnull String id, @Nonnull Map<String, ? extends FluentValue> arguments,
+                           @Nonnull ByteBuffer target) {
+    checkOpen();
+    lazyResources.ensureLoaded(notNull(id, "Message id"));
+    notNull(target, "Target");
+    if (target.isReadOnly()) {
+      throw new ReadOnlyBufferException();
+    }
+    notNull(arguments, "Arguments");
+    FormatInstrumentation instrumentation = this.instrumentation;
+    if (instrumentation == null) {
+      return formatToBytes(id, arguments, target);
+    }
+    return instrumentLength(instrumentation, id, () -> {
+      instrumentation.nativeCall();
+      return formatToBytes(id, arguments, target);
+    });
+  }
+
+  private int formatToBytes(String id, Map<String, ? extends FluentValue> arguments, ByteBuffer target) {
+    FluentArgs args = FluentArgs.from(arguments);
+    try {
+      args.checkOpen();
+      int position = target.position();
+      int remaining = target.remaining();
+      int length = target.isDirect()
+          ? formatToBufferRs(id, args, target, position, remaining)
+          : formatToArrayRs(id, args, target.array(), target.arrayOffset() + position, remaining);
+      if (length > remaining) {
+        throw new BufferOverflowException();
+      }
+      if (length > 0) {
+        target.position(position + length);
+      }
+      return length;
+    } finally {
+      if (args != arguments) {
+        args.close();
+      }
+    }
+  }
+
+  private native int formatToBufferRs(String id, FluentArgs arguments, ByteBuffer target, int position, int remaining);
+
+  private native int formatToArrayRs(String id, FluentArgs arguments, byte[] target, int offset, int remaining);
+
+  /**
+   * Formats several messages at once. This is considerably cheaper than formatting
+   * each message on its own when many messages are needed at the same time, e.g. to render a page.
+   *
+   * Unlike {@link #formatMessage(String, Map)}, this method does not throw if a message cannot be
+   * formatted; instead, the status of each message is reported in its result.
+   *
+   * @param requests The messages to format.
+   * @return A list containing the result for each request, in the same order as the requests.
+   * @throws IllegalArgumentException If the list or any request in the list is {@code null}
+   *                                  or if any argument map contains null keys or values.
+   * @throws IllegalStateException If this bundle or any of the arguments have been closed.
+   * @see FormatRequest
+   */
+  @Nonnull
+  public List<FormatResult> formatMessages(@Nonnull List<FormatRequest> requests) {
+    checkOpen();
+    notNull(requests, "Requests");
+    check(requests.stream().noneMatch(Objects::isNull), "No request in the list may be null");
+    int count = requests.size();
+    String[] ids = new String[count];
+    FluentArgs[] args = new FluentArgs[count];
+    // Requests often share their arguments, so every map is only converted once
+    Map<Map<String, ? extends FluentValue>, FluentArgs> converted = new IdentityHashMap<>();
+    FormatInstrumentation instrumentation = this.instrumentation;
+    long start = System.nanoTime();
+    try {
+      for (int i = 0; i < count; i++) {
+        FormatRequest request = requests.get(i);
+        ids[i] = request.getId();
+        lazyResources.ensureLoaded(ids[i]);
+        args[i] = converted.computeIfAbsent(request.getArguments(), FluentArgs::from);
+        args[i].checkOpen();
+      }
+      String[] values = new String[count];
+      String[][] errors = new String[count][];
+      if (instrumentation != null) {
+        instrumentation.nativeCall();
+      }
+      formatMessagesRs(ids, args, values, errors);
+      List<FormatResult> results = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        results.add(new FormatResult(ids[i], values[i], errors[i]));
+      }
+      if (instrumentation != null && count > 0) {
+        instrumentBatch(instrumentation, results, System.nanoTime() - start);
+      }
+      return results;
+    } finally {
+      converted.forEach((arguments, fluentArgs) -> {
+        if (arguments != fluentArgs) {
+          fluentArgs.close();
+        }
+      });
+    }
+  }
+
+  /**
+   * Formats several messages with the same arguments at once.
+   *
+   * @param ids The ids of the messages to format.
+   * @param arguments The arguments for all of the messages.
+   * @return A list containing the result for each id, in the same order as the ids.
+   * @throws IllegalArgumentException If the list, any id in the list or the arguments are {@code null}
+   *                                  or if the argument map contains null keys or values.
+   * @throws IllegalStateException If this bundle or the arguments have been closed.
+   * @see #formatMessages(List)
+   */
+  @Nonnull
+  public List<FormatResult> formatMessages(@Nonnull List<String> ids, @Nonnull Map<String, ? extends FluentValue> arguments) {
+    notNull(ids, "Message ids");
+    notNull(arguments, "Arguments");
+    List<FormatRequest> requests = new ArrayList<>(ids.size());
+    for (String id : ids) {
+      requests.add(FormatRequest.of(id, arguments));
+    }
+    return formatMessages(requests);
+  }
+
+  // The messages of a batch are formatted in one call, so each is reported with an equal share of its duration
+  private void instrumentBatch(FormatInstrumentation instrumentation, List<FormatResult> results, long nanos) {
+    long share = nanos / results.size();
+    for (FormatResult result : results) {
+      if (result.getStatus() == FormatResult.Status.FAILED) {
+        instrumentation.formatFailed(result.getId(), new MessageFormatException(result.getId(), result.getErrors()));
+      } else {
+        formatted(instrumentation, result.getId(), share, result.getStatus() == FormatResult.Status.MISSING);
+      }
+    }
+  }
+
+  private native void formatMessagesRs(String[] ids, FluentArgs[] args, String[] values, String[][] errors);
+
+  /**
+   * Adds a function implemented in Java that messages can call like built-in functions,
+   * e.g. {@code { PRODUCT_NAME($id) }}. The {@link #setFormatCache(FormatCache) format cache}
+   * is not used anymore afterwards.
+   *
+   * @param name The name of the function. By convention, function names are upper case.
+   * @param function The function.
+   * @throws IllegalArgumentException If the name or the function are {@code null}.
+   * @throws OverrideException If a function with the same name has already been added.
+   * @throws IllegalStateException If this bundle has been closed.
+   * @see FluentFunction
+   */
+  public void addFunction(@Nonnull String name, @Nonnull FluentFunction function) {
+    notNull(name, "Function name");
+    notNull(function, "Function");
+    checkOpen();
+    hasFunctions = true;
+    try {
+      addFunctionRs(name, function);
+    } finally {
+      // Messages that call the function could not be formatted before
+      invalidateCache();
+    }
+  }
+
+  private native void addFunctionRs(String name, FluentFunction function);
+
+  // Called from Rust with the values of all arguments, positional ones first, and the names of the named ones
+  private static Object callFunction(FluentFunction function, Object[] values, String[] names) {
+    return function.apply(new FluentFunction.Arguments(values, names));
+  }
 
   /**
    * Sets whether placeables should be embedded in Unicode Directionality Isolation characters.
@@ -177,8 +993,123 @@ public final class FluentBundle extends RustObject {
    * Enabled by default.
    *
    * @param useIsolating {@code true} to enable, {@code false} to disable it.
+   * @throws IllegalStateException If this bundle has been closed.
    */
-  public native void setUseIsolating(boolean useIsolating);
+  public void setUseIsolating(boolean useIsolating) {
+    checkOpen();
+    setUseIsolatingRs(useIsolating);
+    this.useIsolating = useIsolating;
+    invalidateCache();
+  }
+
+  private native void setUseIsolatingRs(boolean useIsolating);
+
+  /**
+   * Puts a cache in front of {@link #formatMessage(String, Map)}, so that formatting the same message
+   * with the same arguments repeatedly only formats it once. The cache is invalidated automatically
+   * when resources are added or the isolation is changed.
+   * Once a {@link #addFunction(String, FluentFunction) function} has been added, the cache is bypassed,
+   * since functions may return different results for the same arguments. Messages that are formatted in Java
+   * (see {@link #formatMessage(String, Map)}) are not cached either, because that is cheaper than a lookup.
+   *
+   * No cache is used by default.
+   *
+   * @param cache The cache to use or {@code null} to stop caching.
+   * @throws IllegalArgumentException If the cache is already used by another bundle.
+   * @throws IllegalStateException If this bundle has been closed.
+   * @see FormatCache#builder()
+   */
+  public void setFormatCache(@Nullable FormatCache cache) {
+    checkOpen();
+    if (cache != null) {
+      cache.attach(this);
+      cache.invalidateAll();
+    }
+    this.cache = cache;
+  }
+
+  /**
+   * Returns the cache used by {@link #formatMessage(String, Map)}, if any.
+   *
+   * @return An Optional containing the cache or an empty Optional if no cache is used.
+   */
+  @Nonnull
+  public Optional<FormatCache> getFormatCache() {
+    return Optional.ofNullable(cache);
+  }
+
+  /**
+   * Sets the instrumentation that is notified about every message this bundle formats, through any
+   * of the {@code formatMessage} overloads, {@link #formatAttribute(String, String, Map)},
+   * {@link #formatMessageWithAttributes(String, Map)}, {@link #formatMessages(List)} or a
+   * {@link FluentMessage}, and about every time resources are added. The instrumentation is called
+   * on the formatting thread, so it should be fast and must be thread safe.
+   *
+   * Messages of a batch are formatted in a single native call, so each of them is reported with an
+   * equal share of its duration. Messages formatted through a {@link FluentLocalization} are not
+   * reported, because they may come from any bundle of a fallback chain.
+   *
+   * No instrumentation is used by default, which costs nothing but a field read per call.
+   *
+   * @param instrumentation The instrumentation to use or {@code null} to stop instrumenting this bundle.
+   * @see FormatMetrics
+   */
+  public void setInstrumentation(@Nullable FormatInstrumentation instrumentation) {
+    this.instrumentation = instrumentation;
+  }
+
+  /**
+   * Returns the instrumentation of this bundle, if any.
+   *
+   * @return An Optional containing the instrumentation or an empty Optional if this bundle is not instrumented.
+   */
+  @Nonnull
+  public Optional<FormatInstrumentation> getInstrumentation() {
+    return Optional.ofNullable(instrumentation);
+  }
+
+  // Called after every attempt to add resources, whether it succeeded or not
+  private void resourcesAdded(int count, long start) {
+    FormatInstrumentation instrumentation = this.instrumentation;
+    if (instrumentation != null) {
+      instrumentation.resourcesAdded(count, System.nanoTime() - start);
+    }
+    // Taking and applying the templates under one lock keeps them in the order they were added in
+    synchronized (templates) {
+      for (String[] exported : takeTemplatesRs()) {
+        if (exported.length == 1) {
+          templates.remove(exported[0]);
+        } else {
+          templates.put(exported[0], new MessageTemplate(exported));
+        }
+      }
+    }
+    invalidateCache();
+  }
+
+  private native String[][] takeTemplatesRs();
+
+  private void invalidateCache() {
+    FormatCache cache = this.cache;
+    if (cache != null) {
+      cache.invalidateAll();
+    }
+  }
+
+  /**
+   * Returns what this bundle currently holds in native memory.
+   *
+   * @return A snapshot of the statistics of this bundle.
+   * @throws IllegalStateException If this bundle has been closed.
+   * @see NativeStatistics
+   */
+  @Nonnull
+  public BundleStatistics getStatistics() {
+    checkOpen();
+    return new BundleStatistics(statisticsRs());
+  }
+
+  private native long[] statisticsRs();
 
   /**
    * Returns the fallback locales of this bundle.
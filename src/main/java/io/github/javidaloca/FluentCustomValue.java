@@ -0,0 +1,70 @@
+package io.github.javidaloca;
+
+import javax.annotation.Nonnull;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static io.github.javidaloca.Checks.checkState;
+
+/**
+ * The base class for values of custom types, such as amounts of money or dates, that format themselves in Java.
+ *
+ * A custom value is only formatted if a message actually displays it, so passing values that a message
+ * may not need costs nothing but the creation of the value.
+ *
+ * <pre>{@code
+ * public final class Money extends FluentCustomValue {
+ *   private final BigDecimal amount;
+ *   private final Currency currency;
+ *
+ *   ...
+ *
+ *   @Override
+ *   protected String format(Locale locale) {
+ *     NumberFormat format = NumberFormat.getCurrencyInstance(locale);
+ *     format.setCurrency(currency);
+ *     return format.format(amount);
+ *   }
+ * }
+ * }</pre>
+ *
+ * Fluent does not compare custom values with the keys of select expressions, so selecting on a custom value
+ * always picks the default variant. To select on one, pass it to a {@link FluentFunction} that returns the key,
+ * e.g. {@code { AMOUNT($price) -> [one] ... *[other] ... }}: functions receive custom values as the Java
+ * objects they were created as.
+ *
+ * The Rust side only references the Java object weakly. Values passed via {@link FluentArgs} or a map
+ * are kept reachable by them for as long as they are used; values returned by a {@link FluentFunction} are
+ * referenced strongly until the format call that produced them returns.
+ *
+ * @author Johnny_JayJay (https://www.github.com/JohnnyJayJay)
+ */
+public abstract class FluentCustomValue extends FluentValue {
+
+  private static final Map<String, Locale> LOCALES = new ConcurrentHashMap<>();
+
+  protected FluentCustomValue() {
+    bind();
+    track();
+  }
+
+  private native void bind();
+
+  /**
+   * Formats this value for display in a message. Called on the thread that formats the message,
+   * possibly by several threads at once.
+   *
+   * @param locale The locale of the bundle that formats the message.
+   * @return The formatted value.
+   */
+  @Nonnull
+  protected abstract String format(@Nonnull Locale locale);
+
+  // Called from Rust with the language of the bundle
+  private String formatFor(String languageTag) {
+    String result = format(LOCALES.computeIfAbsent(languageTag, Locale::forLanguageTag));
+    checkState(result != null, getClass().getSimpleName() + " was formatted as null");
+    return result;
+  }
+}
@@ -0,0 +1,114 @@
+package io.github.javidaloca;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A function implemented in Java that can be called from FTL, e.g. {@code { PRODUCT_NAME($id, case: "upper") }}.
+ *
+ * Functions are called on the thread that formats the message, while the bundle is locked for reading.
+ * They must therefore be thread safe and must not add resources or functions to the bundle.
+ * Exceptions thrown by a function are rethrown by the method that formatted the message.
+ *
+ * @see FluentBundle#addFunction(String, FluentFunction)
+ * @author Johnny_JayJay (https://www.github.com/JohnnyJayJay)
+ */
+@FunctionalInterface
+public interface FluentFunction {
+
+  /**
+   * Calls this function.
+   *
+   * @param arguments The arguments the function was called with.
+   * @return The result: a {@code String}, a {@code Number}, which is formatted with the
+   *         {@link FluentNumber#DEFAULT_OPTIONS default options}, or any other {@link FluentValue}.
+   *         Any other object, including {@code null}, makes the function produce no value.
+   */
+  @Nullable
+  Object apply(@Nonnull Arguments arguments);
+
+  /**
+   * The positional and named arguments of a function call. Strings are passed as {@code String}s, numbers
+   * as {@code Double}s and {@link FluentCustomValue}s as the objects that were passed as arguments;
+   * other values are {@code null}.
+   *
+   * The arguments are only valid during the call and must not be kept afterwards.
+   */
+  final class Arguments {
+
+    // The positional values followed by the named values
+    private final Object[] values;
+    private final String[] names;
+    private final int positionalCount;
+
+    Arguments(Object[] values, String[] names) {
+      this.values = values;
+      this.names = names;
+      this.positionalCount = values.length - names.length;
+    }
+
+    public int getPositionalCount() {
+      return positionalCount;
+    }
+
+    /**
+     * Returns a positional argument.
+     *
+     * @param index The index of the argument.
+     * @return A {@code String}, a {@code Double}, a {@link FluentCustomValue} or {@code null}.
+     * @throws IndexOutOfBoundsException If there is no argument at that index.
+     */
+    @Nullable
+    public Object getPositional(int index) {
+      if (index < 0 || index >= positionalCount) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", positional arguments: " + positionalCount);
+      }
+      return values[index];
+    }
+
+    /**
+     * Returns a named argument.
+     *
+     * @param name The name of the argument.
+     * @return A {@code String}, a {@code Double}, a {@link FluentCustomValue} or {@code null},
+     *         which is also returned if there is no such argument.
+     */
+    @Nullable
+    public Object getNamed(@Nonnull String name) {
+      for (int i = 0; i < names.length; i++) {
+        if (names[i].equals(name)) {
+          return values[positionalCount + i];
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Returns the names of the named arguments.
+     *
+     * @return An unmodifiable list of names.
+     */
+    @Nonnull
+    public List<String> getNames() {
+      return Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder builder = new StringBuilder("(");
+      for (int i = 0; i < values.length; i++) {
+        if (i > 0) {
+          builder.append(", ");
+        }
+        if (i >= positionalCount) {
+          builder.append(names[i - positionalCount]).append(": ");
+        }
+        builder.append(values[i]);
+      }
+      return builder.append(')').toString();
+    }
+  }
+}
@@ -0,0 +1,349 @@
+package io.github.javidaloca;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import static io.github.javidaloca.Checks.check;
+import static io.github.javidaloca.Checks.checkState;
+import static io.github.javidaloca.Checks.notNull;
+
+/**
+ * A registry of bundles, one per supported {@code Locale}, that formats messages for any requested locale
+ * by falling back through the bundles of related locales.
+ *
+ * For each requested locale, the chain of bundles to fall back to is negotiated once and cached:
+ * it consists of the supported locales that match the requested locale, from the most to the least specific
+ * (for a request of {@code de-CH}: {@code de-CH}, then {@code de} and any other German locale),
+ * followed by the default locale.
+ * Bundles are loaded on first use and the first bundle of the chain that contains a message is found in
+ * a single native call.
+ *
+ * This class is thread safe. Closing it closes all bundles it has loaded.
+ *
+ * @see #builder()
+ * @author Johnny_JayJay (https://www.github.com/JohnnyJayJay)
+ */
+public final class FluentLocalization implements AutoCloseable {
+
+  private final List<Locale> supportedLocales;
+  private final Locale defaultLocale;
+  private final BundleLoader loader;
+  // Loading is done outside of the map, so that slow loaders do not block other locales
+  private final ConcurrentMap<Locale, FutureTask<FluentBundle>> bundles = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Locale, Chain> chains = new ConcurrentHashMap<>();
+  private volatile boolean closed;
+
+  private FluentLocalization(List<Locale> supportedLocales, Locale defaultLocale, BundleLoader loader) {
+    this.supportedLocales = supportedLocales;
+    this.defaultLocale = defaultLocale;
+    this.loader = loader;
+  }
+
+  @Nonnull
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Formats a message for the given locale, using the first bundle in its fallback chain that contains the message.
+   *
+   * @param locale The requested locale.
+   * @param id The identifier of the message to be formatted.
+   * @param arguments The arguments for that message. A {@code Map} of variable name -> value.
+   * @return An Optional containing the formatted message value or an empty Optional if no bundle in the
+   *         fallback chain contains a message with the given id.
+   * @throws IllegalArgumentException If any argument is {@code null} or if any keys or values in the map are null.
+   * @throws IllegalStateException If this registry or the arguments have been closed.
+   * @throws UncheckedIOException If loading a bundle fails.
+   * @throws MessageFormatException If the message could not be formatted
+   *                                (e.g. because of missing arguments)
+   * @see FluentBundle#formatMessage(String, Map)
+   */
+  @Nonnull
+  public Optional<String> formatMessage(@Nonnull Locale locale, @Nonnull String id,
+                                        @Nonnull Map<String, ? extends FluentValue> arguments) {
+    notNull(id, "Message id");
+    Chain chain = chain(locale);
+    FluentArgs args = FluentArgs.from(notNull(arguments, "Arguments"));
+    try {
+      args.checkOpen();
+      FluentBundle[] loaded = chain.loaded;
+      String result = formatFirst(loaded, id, args);
+      // Only the first bundle is loaded until a message is missing from it
+      if (result == null && loaded.length < chain.locales.size()) {
+        result = formatFirst(chain.loadAll(), id, args);
+      }
+      return Optional.ofNullable(result);
+    } finally {
+      if (args != arguments) {
+        args.close();
+      }
+    }
+  }
+
+  private static String formatFirst(FluentBundle[] bundles, String id, FluentArgs args) {
+    for (FluentBundle bundle : bundles) {
+      bundle.checkOpen();
+      bundle.ensureLoaded(id);
+    }
+    return FluentBundle.formatFirstRs(bundles, id, args);
+  }
+
+  /**
+   * Returns the bundle for a supported locale, loading it if that has not happened yet.
+   * If another thread is loading the bundle already, this waits for it to finish.
+   *
+   * @param locale A supported locale.
+   * @return The bundle for that locale.
+   * @throws IllegalArgumentException If the locale is {@code null} or not supported.
+   * @throws IllegalStateException If this registry has been closed.
+   * @throws UncheckedIOException If loading the bundle fails.
+   */
+  @Nonnull
+  public FluentBundle getBundle(@Nonnull Locale locale) {
+    check(supportedLocales.contains(notNull(locale, "Locale")), "Locale is not supported: " + locale);
+    checkState(!closed, "FluentLocalization has already been closed");
+    FutureTask<FluentBundle> task = bundles.get(locale);
+    if (task == null) {
+      FutureTask<FluentBundle> created = new FutureTask<>(() -> notNull(loader.load(locale), "Loaded bundle"));
+      task = bundles.putIfAbsent(locale, created);
+      if (task == null) {
+        task = created;
+        task.run();
+      }
+    }
+    FluentBundle bundle = await(locale, task);
+    // close() only closes bundles that had been loaded when it was called
+    if (closed) {
+      bundles.remove(locale, task);
+      bundle.close();
+    }
+    checkState(!closed, "FluentLocalization has already been closed");
+    return bundle;
+  }
+
+  private FluentBundle await(Locale locale, FutureTask<FluentBundle> task) {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return task.get();
+        } catch (InterruptedException e) {
+          // Loading is not cancelled, so the bundle is waited for regardless
+          interrupted = true;
+        } catch (ExecutionException e) {
+          // Failed loads are not kept so that they are tried again
+          bundles.remove(locale, task);
+          Throwable cause = e.getCause();
+          if (cause instanceof IOException) {
+            throw new UncheckedIOException("Could not load bundle for " + locale, (IOException) cause);
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw (RuntimeException) cause;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Returns the locales whose bundles are used for the given locale, in the order in which they are used.
+   *
+   * @param locale The requested locale.
+   * @return An unmodifiable list of supported locales.
+   * @throws IllegalArgumentException If the locale is {@code null}.
+   */
+  @Nonnull
+  public List<Locale> getFallbackChain(@Nonnull Locale locale) {
+    return chain(locale).locales;
+  }
+
+  @Nonnull
+  public List<Locale> getSupportedLocales() {
+    return supportedLocales;
+  }
+
+  @Nonnull
+  public Locale getDefaultLocale() {
+    return defaultLocale;
+  }
+
+  private Chain chain(Locale locale) {
+    notNull(locale, "Locale");
+    checkState(!closed, "FluentLocalization has already been closed");
+    Chain chain = chains.get(locale);
+    if (chain == null) {
+      // The first bundle is loaded outside of the map. If two threads do this, they get the same bundle.
+      List<Locale> locales = negotiate(locale);
+      Chain created = new Chain(locales, getBundle(locales.get(0)));
+      chain = chains.putIfAbsent(locale, created);
+      if (chain == null) {
+        chain = created;
+      }
+    }
+    return chain;
+  }
+
+  private List<Locale> negotiate(Locale requested) {
+    // The requested locale itself, then less and less specific tags ("de-Latn-CH", "de-Latn", "de")
+    List<String> tags = new ArrayList<>();
+    Locale.Builder builder = new Locale.Builder().setLocale(requested).clearExtensions();
+    tags.add(builder.build().toLanguageTag());
+    tags.add(builder.setVariant(null).build().toLanguageTag());
+    tags.add(builder.setRegion(null).build().toLanguageTag());
+    tags.add(builder.setScript(null).build().toLanguageTag());
+    Set<Locale> chain = new LinkedHashSet<>();
+    for (String tag : tags) {
+      // An exact match is better than a more specific locale
+      for (Locale supported : supportedLocales) {
+        if (supported.toLanguageTag().equalsIgnoreCase(tag)) {
+          chain.add(supported);
+        }
+      }
+      String prefix = tag.toLowerCase(Locale.ROOT) + "-";
+      for (Locale supported : supportedLocales) {
+        if (supported.toLanguageTag().toLowerCase(Locale.ROOT).startsWith(prefix)) {
+          chain.add(supported);
+        }
+      }
+    }
+    chain.add(defaultLocale);
+    return Collections.unmodifiableList(new ArrayList<>(chain));
+  }
+
+  /**
+   * Closes all bundles that have been loaded. Messages cannot be formatted afterwards.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    chains.clear();
+    // Bundles that are still being loaded are closed by the thread loading them
+    for (FutureTask<FluentBundle> task : bundles.values()) {
+      if (task.isDone()) {
+        try {
+          task.get().close();
+        } catch (InterruptedException | ExecutionException ignored) {
+          // Completed tasks do not wait, and failed ones have no bundle to close
+        }
+      }
+    }
+    bundles.clear();
+  }
+
+  private final class Chain {
+
+    private final List<Locale> locales;
+    // A prefix of the bundles for locales, more bundles are only loaded when needed
+    private volatile FluentBundle[] loaded;
+
+    private Chain(List<Locale> locales, FluentBundle first) {
+      this.locales = locales;
+      this.loaded = new FluentBundle[] { first };
+    }
+
+    private FluentBundle[] loadAll() {
+      FluentBundle[] all = new FluentBundle[locales.size()];
+      for (int i = 0; i < all.length; i++) {
+        all[i] = getBundle(locales.get(i));
+      }
+      loaded = all;
+      return all;
+    }
+  }
+
+  /**
+   * Creates the bundle for a locale when it is used for the first time.
+   */
+  @FunctionalInterface
+  public interface BundleLoader {
+
+    /**
+     * Creates and fills the bundle for the given locale.
+     *
+     * @param locale One of the supported locales.
+     * @return The new bundle. It is owned by the registry from then on.
+     * @throws IOException If the resources of the bundle cannot be read.
+     */
+    @Nonnull
+    FluentBundle load(@Nonnull Locale locale) throws IOException;
+  }
+
+  public static final class Builder {
+    private List<Locale> supportedLocales = Collections.emptyList();
+    private Locale defaultLocale;
+    private BundleLoader loader;
+
+    private Builder() {}
+
+    /**
+     * Sets the locales for which bundles exist. The default locale is always supported.
+     */
+    @Nonnull
+    public Builder supportedLocales(@Nonnull Locale... supportedLocales) {
+      return supportedLocales(Arrays.asList(notNull(supportedLocales, "Supported locales")));
+    }
+
+    /**
+     * Sets the locales for which bundles exist. The default locale is always supported.
+     */
+    @Nonnull
+    public Builder supportedLocales(@Nonnull List<Locale> supportedLocales) {
+      notNull(supportedLocales, "Supported locales");
+      check(supportedLocales.stream().noneMatch(Objects::isNull), "No locale in the list may be null");
+      this.supportedLocales = new ArrayList<>(supportedLocales);
+      return this;
+    }
+
+    /**
+     * Sets the locale that is used when no supported locale matches the requested one. Required.
+     */
+    @Nonnull
+    public Builder defaultLocale(@Nonnull Locale defaultLocale) {
+      this.defaultLocale = notNull(defaultLocale, "Default locale");
+      return this;
+    }
+
+    /**
+     * Sets how bundles are created. Required.
+     */
+    @Nonnull
+    public Builder loader(@Nonnull BundleLoader loader) {
+      this.loader = notNull(loader, "Loader");
+      return this;
+    }
+
+    /**
+     * Creates the registry. No bundles are loaded yet.
+     *
+     * @throws IllegalArgumentException If the default locale or the loader have not been set.
+     */
+    @Nonnull
+    public FluentLocalization build() {
+      notNull(defaultLocale, "Default locale");
+      notNull(loader, "Loader");
+      Set<Locale> locales = new LinkedHashSet<>(supportedLocales);
+      locales.add(defaultLocale);
+      return new FluentLocalization(Collections.unmodifiableList(new ArrayList<>(locales)), defaultLocale, loader);
+    }
+  }
+}
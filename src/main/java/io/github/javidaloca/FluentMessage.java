@@ -0,0 +1,130 @@
+package io.github.javidaloca;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static io.github.javidaloca.Checks.notNull;
+
+/**
+ * A handle to a message of a {@link FluentBundle} that has been looked up once and can be formatted
+ * repeatedly without resolving its id again.
+ *
+ * If the message is replaced by {@link FluentBundle#addResource(String, boolean) overriding it},
+ * the handle picks up the new message automatically.
+ *
+ * This class is thread safe.
+ *
+ * @see FluentBundle#message(String)
+ * @author Johnny_JayJay (https://www.github.com/JohnnyJayJay)
+ */
+public final class FluentMessage extends RustObject {
+
+  private final FluentBundle bundle;
+  private final String id;
+
+  FluentMessage(FluentBundle bundle, String id) {
+    this.bundle = bundle;
+    this.id = id;
+    bind(bundle, id);
+    track();
+  }
+
+  private native void bind(FluentBundle bundle, String id);
+
+  /**
+   * Returns the id of this message.
+   *
+   * @return The message id.
+   */
+  @Nonnull
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * Returns the bundle this message belongs to.
+   *
+   * @return The bundle.
+   */
+  @Nonnull
+  public FluentBundle getBundle() {
+    return bundle;
+  }
+
+  /**
+   * Returns whether this message has a value. Messages that only consist of attributes do not have one.
+   *
+   * @return {@code true} if the message has a value, {@code false} if not.
+   * @throws IllegalStateException If this message or its bundle have been closed.
+   */
+  public boolean hasValue() {
+    checkUsable();
+    return hasValueRs(bundle);
+  }
+
+  private native boolean hasValueRs(FluentBundle bundle);
+
+  /**
+   * Returns the names of the attributes of this message.
+   *
+   * @return An unmodifiable set of attribute names.
+   * @throws IllegalStateException If this message or its bundle have been closed.
+   */
+  @Nonnull
+  public Set<String> getAttributeNames() {
+    checkUsable();
+    return Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(getAttributeNamesRs(bundle))));
+  }
+
+  private native String[] getAttributeNamesRs(FluentBundle bundle);
+
+  /**
+   * Formats the value of this message with the given arguments.
+   *
+   * @param arguments The arguments for this message. A {@code Map} of variable name -> value.
+   * @return An Optional containing the formatted message value or an empty Optional if this message
+   *         does not have a value.
+   * @throws IllegalArgumentException If the argument map is {@code null} or if any keys or values in the map are null.
+   * @throws IllegalStateException If this message, its bundle or the arguments have been closed.
+   * @throws MessageFormatException If the message could not be formatted
+   *                                (e.g. because of missing arguments)
+   * @see FluentBundle#formatMessage(String, Map)
+   */
+  @Nonnull
+  public Optional<String> format(@Nonnull Map<String, ? extends FluentValue> arguments) {
+    checkUsable();
+    notNull(arguments, "Arguments");
+    FormatInstrumentation instrumentation = bundle.instrumentation();
+    if (instrumentation == null) {
+      return formatValue(arguments);
+    }
+    return bundle.instrument(instrumentation, id, () -> {
+      instrumentation.nativeCall();
+      return formatValue(arguments);
+    });
+  }
+
+  private Optional<String> formatValue(Map<String, ? extends FluentValue> arguments) {
+    FluentArgs args = FluentArgs.from(arguments);
+    try {
+      args.checkOpen();
+      return Optional.ofNullable(formatRs(bundle, id, args));
+    } finally {
+      if (args != arguments) {
+        args.close();
+      }
+    }
+  }
+
+  private native String formatRs(FluentBundle bundle, String id, FluentArgs arguments);
+
+  private void checkUsable() {
+    checkOpen();
+    bundle.checkOpen();
+  }
+}
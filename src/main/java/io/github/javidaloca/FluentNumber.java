@@ -3,6 +3,7 @@ package io.github.javidaloca;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import java.util.Objects;
 import java.util.Optional;
 
 import static io.github.javidaloca.Checks.notNull;
@@ -28,10 +29,11 @@ public final class FluentNumber extends FluentValue {
   private FluentNumber(double value, Options options) {
     this.value = value;
     this.options = options;
-    bind(value, options);
+    NativeBackend.get().bind(this, value, options);
+    track();
   }
 
-  private native void bind(double value, Options options);
+  native void bind(double value, Options options);
 
   /**
    * Creates a new instance of FluentNumber based on the given value and options.
@@ -40,10 +42,12 @@ public final class FluentNumber extends FluentValue {
    * @param options The options for this FluentNumber.
    * @return The new instance.
    * @throws IllegalArgumentException If the options are {@code null}.
+   * @throws IllegalStateException If the options have been closed.
    */
   @Nonnull
   public static FluentNumber of(double value, @Nonnull Options options) {
-    return new FluentNumber(value, notNull(options, "Options"));
+    notNull(options, "Options").checkOpen();
+    return new FluentNumber(value, options);
   }
 
   /**
@@ -74,7 +78,16 @@ public final class FluentNumber extends FluentValue {
     return new Options.Builder();
   }
 
-  public static final class Options {
+  /**
+   * Formatting options for numbers.
+   *
+   * Each instance is converted to its Rust counterpart once, when it is {@link Builder#build() built}.
+   * All numbers created with an instance share that conversion, so instances should be reused,
+   * e.g. by keeping them in constants. Since instances are usually shared, they should not be
+   * {@link #close() closed} unless it is certain that they are no longer used.
+   * {@link #DEFAULT_OPTIONS} cannot be closed at all.
+   */
+  public static final class Options extends RustObject {
 
     private final Style style;
     private final String currency;
@@ -96,6 +109,21 @@ public final class FluentNumber extends FluentValue {
       this.maximumFractionDigits = maximumFractionDigits;
       this.minimumSignificantDigits = minimumSignificantDigits;
       this.maximumSignificantDigits = maximumSignificantDigits;
+      bind();
+      track();
+    }
+
+    private native void bind();
+
+    /**
+     * Frees the Rust value of these options, unless they are the {@link #DEFAULT_OPTIONS}, which
+     * are used by the whole process and therefore never closed.
+     */
+    @Override
+    public void close() {
+      if (this != DEFAULT_OPTIONS) {
+        super.close();
+      }
     }
 
     @Nonnull
@@ -137,6 +165,32 @@ public final class FluentNumber extends FluentValue {
       return maximumSignificantDigits;
     }
 
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Options)) {
+        return false;
+      }
+      Options options = (Options) o;
+      return useGrouping == options.useGrouping
+          && minimumIntegerDigits == options.minimumIntegerDigits
+          && minimumFractionDigits == options.minimumFractionDigits
+          && maximumFractionDigits == options.maximumFractionDigits
+          && minimumSignificantDigits == options.minimumSignificantDigits
+          && maximumSignificantDigits == options.maximumSignificantDigits
+          && style == options.style
+          && Objects.equals(currency, options.currency)
+          && currencyDisplay == options.currencyDisplay;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(style, currency, currencyDisplay, useGrouping, minimumIntegerDigits,
+          minimumFractionDigits, maximumFractionDigits, minimumSignificantDigits, maximumSignificantDigits);
+    }
+
     public static final class Builder {
       private Style style = Style.DECIMAL;
       private String currency = null;
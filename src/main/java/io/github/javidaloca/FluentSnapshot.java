@@ -0,0 +1,223 @@
+package io.github.javidaloca;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+import static io.github.javidaloca.Checks.check;
+import static io.github.javidaloca.Checks.notNull;
+
+/**
+ * Compiles a set of FTL files into a single snapshot file ahead of time, e.g. at build or deploy time,
+ * and loads such snapshots into bundles.
+ *
+ * A snapshot contains the validated resources with comments removed, together with the size and
+ * modification time of each source file. Loading a snapshot maps the file into memory, verifies its checksum
+ * and parses the resources in parallel straight from the mapped file, copying each of them once into a
+ * native string. The source files are neither opened nor validated again. The resources are still parsed
+ * on every load, because parsed Fluent resources cannot be stored. If the snapshot is missing, corrupt,
+ * of a different format version or older than any of its source files, the source files are loaded instead.
+ *
+ * Snapshots can be created using {@link #compile(List, Path)} or from the command line:
+ * <pre>{@code java -cp <classpath> io.github.javidaloca.FluentSnapshot <snapshot> <source>...}</pre>
+ *
+ * @author Johnny_JayJay (https://www.github.com/JohnnyJayJay)
+ */
+public final class FluentSnapshot {
+
+  // "FTLS"
+  private static final int MAGIC = 0x46544C53;
+  private static final int VERSION = 1;
+  // magic, version and checksum
+  private static final int HEADER_SIZE = 16;
+
+  private FluentSnapshot() {}
+
+  /**
+   * Parses the given FTL files and writes them to a snapshot.
+   *
+   * @param sources The FTL files to include, in the order in which they should be added to bundles.
+   * @param target The file to write the snapshot to. Existing files are replaced.
+   * @throws IllegalArgumentException If the list, any path in the list or the target are {@code null}.
+   * @throws IOException If an I/O problem with any of the files occurs.
+   * @throws ParseException If any of the files is invalid FTL.
+   */
+  public static void compile(@Nonnull List<Path> sources, @Nonnull Path target) throws IOException {
+    notNull(sources, "Source Paths");
+    notNull(target, "Target Path");
+    check(sources.stream().noneMatch(Objects::isNull), "No path in the list may be null");
+    // Snapshots only ever contain valid resources, so they can be loaded without reporting errors
+    try (FluentBundle bundle = FluentBundle.create(Locale.ENGLISH)) {
+      bundle.addResources(sources, true);
+    }
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(body);
+    out.writeInt(sources.size());
+    for (Path source : sources) {
+      byte[] path = source.toString().getBytes(StandardCharsets.UTF_8);
+      byte[] resource = stripComments(Files.readAllBytes(source));
+      out.writeInt(path.length);
+      out.write(path);
+      out.writeLong(Files.size(source));
+      out.writeLong(Files.getLastModifiedTime(source).toMillis());
+      out.writeInt(resource.length);
+      out.write(resource);
+    }
+    out.flush();
+    byte[] bytes = body.toByteArray();
+    CRC32 checksum = new CRC32();
+    checksum.update(bytes);
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+        .putInt(MAGIC)
+        .putInt(VERSION)
+        .putLong(checksum.getValue());
+    header.flip();
+    try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer content = ByteBuffer.wrap(bytes);
+      while (header.hasRemaining()) {
+        channel.write(header);
+      }
+      while (content.hasRemaining()) {
+        channel.write(content);
+      }
+    }
+  }
+
+  // Comments can only start at the beginning of a line, so they are removed line by line.
+  // Blank lines are kept since they may be part of multiline patterns.
+  private static byte[] stripComments(byte[] resource) {
+    ByteArrayOutputStream stripped = new ByteArrayOutputStream(resource.length);
+    int start = 0;
+    while (start < resource.length) {
+      int end = start;
+      while (end < resource.length && resource[end] != '\n') {
+        end++;
+      }
+      // Include the line break
+      end = Math.min(end + 1, resource.length);
+      if (resource[start] != '#') {
+        stripped.write(resource, start, end - start);
+      }
+      start = end;
+    }
+    return stripped.toByteArray();
+  }
+
+  /**
+   * Adds the resources of a snapshot to a bundle or, if the snapshot cannot be used,
+   * the resources of the given source files.
+   *
+   * @param bundle The bundle to add the resources to.
+   * @param snapshot The snapshot file.
+   * @param sources The files the snapshot was compiled from, in the same order. They are only used to
+   *                check whether the snapshot is up to date and as a fallback. Source files that
+   *                no longer exist do not make a snapshot stale.
+   * @param override Whether the resources should override messages when encountering a message id
+   *                 that already exists.
+   * @return {@code true} if the snapshot was used, {@code false} if the source files were loaded instead.
+   * @throws IllegalArgumentException If any argument is {@code null} or if any path in the list is {@code null}.
+   * @throws IOException If an I/O problem with the source files occurs while falling back to them.
+   * @throws ParseException If the snapshot cannot be used and any of the source files is invalid FTL.
+   * @throws OverrideException If {@code override} is {@code false} and the resources contain
+   *                           one or more messages that already exist.
+   * @throws IllegalStateException If the bundle has been closed.
+   * @see FluentBundle#addResources(java.util.Collection, boolean)
+   */
+  public static boolean load(@Nonnull FluentBundle bundle, @Nonnull Path snapshot,
+                             @Nonnull List<Path> sources, boolean override) throws IOException {
+    notNull(bundle, "Bundle");
+    notNull(snapshot, "Snapshot Path");
+    notNull(sources, "Source Paths");
+    check(sources.stream().noneMatch(Objects::isNull), "No path in the list may be null");
+    List<ByteBuffer> resources = read(snapshot, sources);
+    if (resources == null) {
+      bundle.addResources(sources, override);
+      return false;
+    }
+    bundle.addBuffers(resources, override);
+    return true;
+  }
+
+  // Returns the resources of the snapshot or null if it cannot be used for the given sources
+  private static List<ByteBuffer> read(Path snapshot, List<Path> sources) {
+    ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } catch (IOException | IllegalArgumentException e) {
+      return null;
+    }
+    try {
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        return null;
+      }
+      long expectedChecksum = buffer.getLong();
+      CRC32 checksum = new CRC32();
+      checksum.update(buffer.duplicate());
+      if (checksum.getValue() != expectedChecksum || buffer.getInt() != sources.size()) {
+        return null;
+      }
+      List<ByteBuffer> resources = new ArrayList<>(sources.size());
+      for (Path source : sources) {
+        byte[] path = new byte[buffer.getInt()];
+        buffer.get(path);
+        long size = buffer.getLong();
+        long lastModified = buffer.getLong();
+        if (!Arrays.equals(path, source.toString().getBytes(StandardCharsets.UTF_8))
+            || isStale(source, size, lastModified)) {
+          return null;
+        }
+        int length = buffer.getInt();
+        ByteBuffer resource = buffer.slice();
+        resource.limit(length);
+        resources.add(resource);
+        buffer.position(buffer.position() + length);
+      }
+      return resources;
+    } catch (BufferUnderflowException | IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static boolean isStale(Path source, long size, long lastModified) {
+    try {
+      return Files.size(source) != size || Files.getLastModifiedTime(source).toMillis() != lastModified;
+    } catch (IOException e) {
+      // The source is gone; the snapshot is all that is left
+      return false;
+    }
+  }
+
+  /**
+   * Compiles a snapshot from the command line.
+   *
+   * @param args The snapshot file followed by the FTL files to include.
+   * @throws IOException If an I/O problem with any of the files occurs.
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: FluentSnapshot <snapshot> <source>...");
+      System.exit(1);
+    }
+    List<Path> sources = new ArrayList<>(args.length - 1);
+    for (int i = 1; i < args.length; i++) {
+      sources.add(Paths.get(args[i]));
+    }
+    compile(sources, Paths.get(args[0]));
+  }
+}
@@ -16,7 +16,8 @@ public final class FluentString extends FluentValue {
 
   private FluentString(String value) {
     this.value = value;
-    bind(value);
+    NativeBackend.get().bind(this, value);
+    track();
   }
 
   /**
@@ -31,7 +32,7 @@ public final class FluentString extends FluentValue {
     return new FluentString(notNull(value, "Value"));
   }
 
-  private native void bind(String value);
+  native void bind(String value);
 
   /**
    * Returns the value wrapped by this FluentValue instance.
@@ -0,0 +1,282 @@
+package io.github.javidaloca;
+
+import javax.annotation.Nonnull;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import static io.github.javidaloca.Checks.check;
+
+/**
+ * A bounded cache for formatted messages that can be put in front of
+ * {@link FluentBundle#formatMessage(String, Map)} using {@link FluentBundle#setFormatCache(FormatCache)}.
+ *
+ * Entries are keyed by message id and argument values and evicted once the cache exceeds its maximum size
+ * or weight (the total length of all cached messages). The limits apply to the whole cache. For concurrency,
+ * the cache is split into segments that keep their own least recently used order, so an evicted entry is
+ * the least recently used one of its segment, not necessarily of the whole cache.
+ * The cache is invalidated whenever the bundle it is attached to changes.
+ *
+ * Only arguments consisting of {@link FluentString FluentStrings} and {@link FluentNumber FluentNumbers}
+ * (including numbers inserted into {@link FluentArgs} as primitives) are cached. Messages that fail
+ * to format are never cached, and nothing is cached for bundles that have
+ * {@link FluentBundle#addFunction(String, FluentFunction) functions}. Messages that consist only of text and
+ * variables are usually formatted in Java, which is cheaper than a lookup, and then do not use the cache either.
+ *
+ * A cache can only be attached to one bundle. This class is thread safe.
+ *
+ * @see #builder()
+ * @author Johnny_JayJay (https://www.github.com/JohnnyJayJay)
+ */
+public final class FormatCache {
+
+  // Each segment has its own lock and LRU order, so that threads rarely wait for each other
+  private static final int SEGMENTS = 16;
+
+  private final Segment[] segments;
+  private final long maximumSize;
+  private final long maximumWeight;
+  // Shared by all segments, which only change them while holding their own lock
+  private final AtomicLong size = new AtomicLong();
+  private final AtomicLong weight = new AtomicLong();
+  private final AtomicLong generation = new AtomicLong();
+  private final AtomicReference<FluentBundle> owner = new AtomicReference<>();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  private FormatCache(long maximumSize, long maximumWeight) {
+    this.maximumSize = maximumSize;
+    this.maximumWeight = maximumWeight;
+    this.segments = new Segment[SEGMENTS];
+    for (int i = 0; i < SEGMENTS; i++) {
+      segments[i] = new Segment();
+    }
+  }
+
+  @Nonnull
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  void attach(FluentBundle bundle) {
+    check(owner.compareAndSet(null, bundle) || owner.get() == bundle,
+        "This cache is already attached to another bundle");
+  }
+
+  /**
+   * Returns a key for the given message and arguments or {@code null} if the result must not be cached.
+   */
+  static Object key(String id, FluentArgs args) {
+    Object arguments = args.cacheKey();
+    return arguments == null ? null : new Key(id, arguments);
+  }
+
+  /**
+   * Returns the generation that has to be passed to {@link #put(Object, Optional, long)} for a result
+   * that is about to be computed.
+   */
+  long generation() {
+    return generation.get();
+  }
+
+  Optional<String> get(Object key) {
+    Optional<String> result = segmentFor(key).get(key);
+    if (result == null) {
+      misses.increment();
+    } else {
+      hits.increment();
+    }
+    return result;
+  }
+
+  void put(Object key, Optional<String> result, long generation) {
+    int index = segmentIndex(key);
+    segments[index].put(key, result, generation);
+    // Starts with the next segment and ends with this one, so that a new entry only evicts itself
+    // if it does not fit into the cache at all. Only one lock is held at a time.
+    for (int i = 1; i <= SEGMENTS && exceedsLimits(); i++) {
+      Segment segment = segments[(index + i) & (SEGMENTS - 1)];
+      while (exceedsLimits() && segment.evictEldest()) {
+        evictions.increment();
+      }
+    }
+  }
+
+  private boolean exceedsLimits() {
+    return size.get() > maximumSize || weight.get() > maximumWeight;
+  }
+
+  /**
+   * Removes all entries from this cache. This happens automatically when the bundle changes.
+   */
+  public void invalidateAll() {
+    generation.incrementAndGet();
+    for (Segment segment : segments) {
+      segment.clear();
+    }
+  }
+
+  /**
+   * Returns the number of entries currently in this cache.
+   *
+   * @return The number of entries.
+   */
+  public long size() {
+    return size.get();
+  }
+
+  /**
+   * Returns how many lookups found a cached message.
+   *
+   * @return The number of cache hits.
+   */
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  /**
+   * Returns how many lookups did not find a cached message. Lookups for arguments that cannot be cached
+   * are not counted.
+   *
+   * @return The number of cache misses.
+   */
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  /**
+   * Returns how many entries were evicted because the cache exceeded its maximum size or weight.
+   *
+   * @return The number of evictions.
+   */
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  private Segment segmentFor(Object key) {
+    return segments[segmentIndex(key)];
+  }
+
+  private static int segmentIndex(Object key) {
+    int hash = key.hashCode();
+    return (hash ^ (hash >>> 16)) & (SEGMENTS - 1);
+  }
+
+  private final class Segment {
+
+    private final LinkedHashMap<Object, Optional<String>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    synchronized Optional<String> get(Object key) {
+      return entries.get(key);
+    }
+
+    synchronized void put(Object key, Optional<String> result, long generation) {
+      // The bundle has changed since the result was computed
+      if (generation != FormatCache.this.generation.get()) {
+        return;
+      }
+      Optional<String> previous = entries.put(key, result);
+      if (previous == null) {
+        size.incrementAndGet();
+      } else {
+        weight.addAndGet(-weigh(previous));
+      }
+      weight.addAndGet(weigh(result));
+    }
+
+    /**
+     * Removes the least recently used entry of this segment. Returns {@code false} if it is empty.
+     */
+    synchronized boolean evictEldest() {
+      Iterator<Optional<String>> iterator = entries.values().iterator();
+      if (!iterator.hasNext()) {
+        return false;
+      }
+      weight.addAndGet(-weigh(iterator.next()));
+      iterator.remove();
+      size.decrementAndGet();
+      return true;
+    }
+
+    synchronized void clear() {
+      long removed = 0;
+      for (Optional<String> result : entries.values()) {
+        removed += weigh(result);
+      }
+      size.addAndGet(-entries.size());
+      weight.addAndGet(-removed);
+      entries.clear();
+    }
+
+    private int weigh(Optional<String> result) {
+      return result.map(String::length).orElse(0);
+    }
+  }
+
+  private static final class Key {
+
+    private final String id;
+    private final Object arguments;
+    private final int hash;
+
+    private Key(String id, Object arguments) {
+      this.id = id;
+      this.arguments = arguments;
+      this.hash = 31 * id.hashCode() + arguments.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) o;
+      return hash == key.hash && id.equals(key.id) && arguments.equals(key.arguments);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  public static final class Builder {
+    private long maximumSize = 10_000;
+    private long maximumWeight = Long.MAX_VALUE;
+
+    private Builder() {}
+
+    /**
+     * Sets the maximum number of cached messages. Defaults to 10000.
+     */
+    @Nonnull
+    public Builder maximumSize(long maximumSize) {
+      check(maximumSize > 0, "Maximum size must be positive");
+      this.maximumSize = maximumSize;
+      return this;
+    }
+
+    /**
+     * Sets the maximum total length of all cached messages, in chars. Unlimited by default.
+     */
+    @Nonnull
+    public Builder maximumWeight(long maximumWeight) {
+      check(maximumWeight > 0, "Maximum weight must be positive");
+      this.maximumWeight = maximumWeight;
+      return this;
+    }
+
+    @Nonnull
+    public FormatCache build() {
+      return new FormatCache(maximumSize, maximumWeight);
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package io.github.javidaloca;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Receives notifications about the work a {@link FluentBundle} does, e.g. to record metrics.
+ *
+ * All methods are called synchronously on the thread that does the work, so implementations should be fast
+ * and must be thread safe. Exceptions thrown by them are passed on to the caller of the bundle.
+ * All methods do nothing by default.
+ *
+ * @see FluentBundle#setInstrumentation(FormatInstrumentation)
+ * @see FormatMetrics
+ * @author Johnny_JayJay (https://www.github.com/JohnnyJayJay)
+ */
+public interface FormatInstrumentation {
+
+  /**
+   * Called after a message or attribute has been formatted, or found to be missing.
+   *
+   * @param id The id of the message.
+   * @param nanos How long the call took, in nanoseconds.
+   */
+  default void messageFormatted(@Nonnull String id, long nanos) {}
+
+  /**
+   * Called whenever a format call crosses into native code, i.e. when the message can neither be formatted
+   * in Java nor be taken from the {@link FormatCache}.
+   */
+  default void nativeCall() {}
+
+  /**
+   * Called when a message that is to be formatted does not exist.
+   * Messages that exist but do not have a value or the requested attribute are not reported.
+   *
+   * @param id The id of the message.
+   */
+  default void messageMissing(@Nonnull String id) {}
+
+  /**
+   * Called when a message could not be formatted, before the exception is thrown.
+   *
+   * @param id The id of the message.
+   * @param exception The exception that is going to be thrown.
+   */
+  default void formatFailed(@Nonnull String id, @Nonnull MessageFormatException exception) {}
+
+  /**
+   * Called after resources have been added to the bundle, whether that succeeded or not.
+   * This includes resources that were added lazily and are loaded now.
+   *
+   * @param count The number of resources.
+   * @param nanos How long it took to parse and add the resources, in nanoseconds.
+   */
+  default void resourcesAdded(int count, long nanos) {}
+}
@@ -0,0 +1,281 @@
+package io.github.javidaloca;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static io.github.javidaloca.Checks.check;
+import static io.github.javidaloca.Checks.notNull;
+
+/**
+ * An instrumentation that records format latencies in histograms, overall and per message, and counts
+ * native calls, missing messages, format errors by kind and resource loads.
+ *
+ * Per message, at most {@link #DEFAULT_MAX_MESSAGES} ids (or the limit passed to the constructor) are tracked,
+ * so that requests for arbitrary message ids cannot make the metrics grow without bound. Messages beyond the limit
+ * are only included in the overall numbers.
+ *
+ * Recording is lock free. One instance may be shared by several bundles. This class is thread safe.
+ *
+ * @see FluentBundle#setInstrumentation(FormatInstrumentation)
+ * @author Johnny_JayJay (https://www.github.com/JohnnyJayJay)
+ */
+public final class FormatMetrics implements FormatInstrumentation {
+
+  /**
+   * The number of message ids that are tracked individually by default.
+   */
+  public static final int DEFAULT_MAX_MESSAGES = 1000;
+
+  private final int maxMessages;
+  private final LatencyHistogram formatLatency = new LatencyHistogram();
+  private final ConcurrentMap<String, LatencyHistogram> messageLatencies = new ConcurrentHashMap<>();
+  private final LongAdder nativeCalls = new LongAdder();
+  private final LongAdder missingCount = new LongAdder();
+  private final ConcurrentMap<String, LongAdder> missingMessages = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+  private final LatencyHistogram resourceLatency = new LatencyHistogram();
+  private final LongAdder resources = new LongAdder();
+
+  /**
+   * Creates metrics that track up to {@link #DEFAULT_MAX_MESSAGES} message ids individually.
+   */
+  public FormatMetrics() {
+    this(DEFAULT_MAX_MESSAGES);
+  }
+
+  /**
+   * Creates metrics that track up to the given number of message ids individually.
+   *
+   * @param maxMessages The number of ids for which latencies and missing requests are recorded separately.
+   *                    {@code 0} disables tracking per message.
+   * @throws IllegalArgumentException If the number is negative.
+   */
+  public FormatMetrics(int maxMessages) {
+    check(maxMessages >= 0, "The maximum number of messages must not be negative");
+    this.maxMessages = maxMessages;
+  }
+
+  @Override
+  public void messageFormatted(@Nonnull String id, long nanos) {
+    formatLatency.record(nanos);
+    LatencyHistogram latency = tracked(messageLatencies, id, LatencyHistogram::new);
+    if (latency != null) {
+      latency.record(nanos);
+    }
+  }
+
+  @Override
+  public void nativeCall() {
+    nativeCalls.increment();
+  }
+
+  @Override
+  public void messageMissing(@Nonnull String id) {
+    missingCount.increment();
+    LongAdder counter = tracked(missingMessages, id, LongAdder::new);
+    if (counter != null) {
+      counter.increment();
+    }
+  }
+
+  // Returns null for new ids once the limit is reached. Concurrent calls may exceed it slightly.
+  private <T> T tracked(ConcurrentMap<String, T> values, String id, Supplier<T> factory) {
+    T value = values.get(id);
+    if (value == null && values.size() < maxMessages) {
+      value = values.computeIfAbsent(id, (key) -> factory.get());
+    }
+    return value;
+  }
+
+  @Override
+  public void formatFailed(@Nonnull String id, @Nonnull MessageFormatException exception) {
+    for (String error : exception.errors()) {
+      errors.computeIfAbsent(kind(error), (key) -> new LongAdder()).increment();
+    }
+  }
+
+  // Errors are described as "<kind>" or "<kind>: <details>"
+  private static String kind(String error) {
+    int colon = error.indexOf(':');
+    return colon < 0 ? error : error.substring(0, colon);
+  }
+
+  @Override
+  public void resourcesAdded(int count, long nanos) {
+    resourceLatency.record(nanos);
+    resources.add(count);
+  }
+
+  /**
+   * Returns the latencies of all format calls.
+   */
+  @Nonnull
+  public LatencyHistogram getFormatLatency() {
+    return formatLatency;
+  }
+
+  /**
+   * Returns the latencies of the format calls for one message.
+   *
+   * @param id The id of the message.
+   * @return An Optional containing the latencies or an empty Optional if the message has not been formatted yet
+   *         or is not tracked because the limit of message ids was reached.
+   * @throws IllegalArgumentException If the id is {@code null}.
+   */
+  @Nonnull
+  public Optional<LatencyHistogram> getFormatLatency(@Nonnull String id) {
+    return Optional.ofNullable(messageLatencies.get(notNull(id, "Message id")));
+  }
+
+  /**
+   * Returns how many format calls crossed into native code.
+   */
+  public long getNativeCallCount() {
+    return nativeCalls.sum();
+  }
+
+  /**
+   * Returns how often messages that do not exist were requested, including ids that are not tracked individually.
+   */
+  public long getMissingMessageCount() {
+    return missingCount.sum();
+  }
+
+  /**
+   * Returns how often messages that do not exist were requested, per message id.
+   *
+   * @return An unmodifiable snapshot of message id -> number of requests, sorted by id.
+   *         Ids beyond the limit of tracked message ids are left out.
+   */
+  @Nonnull
+  public Map<String, Long> getMissingMessages() {
+    return snapshot(missingMessages);
+  }
+
+  /**
+   * Returns how often each kind of format error occurred, e.g. {@code Unresolved reference} or {@code Cyclic reference}.
+   *
+   * @return An unmodifiable snapshot of error kind -> number of errors, sorted by kind.
+   */
+  @Nonnull
+  public Map<String, Long> getErrors() {
+    return snapshot(errors);
+  }
+
+  private static Map<String, Long> snapshot(Map<String, LongAdder> counters) {
+    Map<String, Long> snapshot = new TreeMap<>();
+    counters.forEach((key, counter) -> snapshot.put(key, counter.sum()));
+    return Collections.unmodifiableMap(snapshot);
+  }
+
+  /**
+   * Returns how long it took to add resources, per call that added resources.
+   */
+  @Nonnull
+  public LatencyHistogram getResourceLatency() {
+    return resourceLatency;
+  }
+
+  /**
+   * Returns how many resources have been added.
+   */
+  public long getResourceCount() {
+    return resources.sum();
+  }
+
+  /**
+   * A histogram of durations with exponential buckets. Bucket {@code i} counts the durations
+   * of less than {@code 2^i} nanoseconds that do not fit into a smaller bucket, so each bucket
+   * is twice as wide as the previous one. Percentiles are therefore accurate within a factor of 2.
+   */
+  public static final class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+
+    private LatencyHistogram() {}
+
+    void record(long nanos) {
+      long value = Math.max(nanos, 0);
+      buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+      total.add(value);
+    }
+
+    /**
+     * Returns the number of recorded durations.
+     */
+    public long getCount() {
+      long count = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        count += buckets.get(i);
+      }
+      return count;
+    }
+
+    /**
+     * Returns the sum of all recorded durations in nanoseconds.
+     */
+    public long getTotalNanos() {
+      return total.sum();
+    }
+
+    /**
+     * Returns an upper bound for the given percentile of the recorded durations.
+     *
+     * @param percentile The percentile, between 0 and 100, e.g. {@code 99.9}.
+     * @return The upper bound of the bucket containing the percentile in nanoseconds,
+     *         or 0 if nothing has been recorded.
+     * @throws IllegalArgumentException If the percentile is not between 0 and 100.
+     */
+    public long getPercentileNanos(double percentile) {
+      check(percentile >= 0 && percentile <= 100, "Percentile must be between 0 and 100");
+      long[] counts = getBucketCounts();
+      long count = 0;
+      for (long bucket : counts) {
+        count += bucket;
+      }
+      long rank = (long) Math.ceil(count * percentile / 100);
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        seen += counts[i];
+        if (counts[i] > 0 && seen >= rank) {
+          return (1L << i) - 1;
+        }
+      }
+      return 0;
+    }
+
+    /**
+     * Returns the number of durations in each bucket.
+     *
+     * @return A new array of 64 counts.
+     */
+    @Nonnull
+    public long[] getBucketCounts() {
+      long[] counts = new long[BUCKETS];
+      for (int i = 0; i < BUCKETS; i++) {
+        counts[i] = buckets.get(i);
+      }
+      return counts;
+    }
+
+    @Override
+    public String toString() {
+      return "LatencyHistogram{" +
+          "count=" + getCount() +
+          ", p50=" + getPercentileNanos(50) + "ns" +
+          ", p99=" + getPercentileNanos(99) + "ns" +
+          '}';
+    }
+  }
+}
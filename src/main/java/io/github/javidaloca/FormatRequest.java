@@ -0,0 +1,62 @@
+package io.github.javidaloca;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.Map;
+
+import static io.github.javidaloca.Checks.notNull;
+
+/**
+ * A message id and the arguments it should be formatted with, as part of a
+ * {@link FluentBundle#formatMessages(java.util.List) batch}.
+ *
+ * @see #of(String, Map)
+ * @author Johnny_JayJay (https://www.github.com/JohnnyJayJay)
+ */
+public final class FormatRequest {
+
+  private final String id;
+  private final Map<String, ? extends FluentValue> arguments;
+
+  private FormatRequest(String id, Map<String, ? extends FluentValue> arguments) {
+    this.id = id;
+    this.arguments = arguments;
+  }
+
+  /**
+   * Creates a request for a message that does not need any arguments.
+   *
+   * @param id The message id.
+   * @return The new request.
+   * @throws IllegalArgumentException If the id is {@code null}.
+   */
+  @Nonnull
+  public static FormatRequest of(@Nonnull String id) {
+    return of(id, Collections.emptyMap());
+  }
+
+  /**
+   * Creates a request for a message with the given arguments. Requests in the same batch may share
+   * the same arguments, in which case they are only converted once.
+   *
+   * @param id The message id.
+   * @param arguments The arguments for the message.
+   * @return The new request.
+   * @throws IllegalArgumentException If the id or the arguments are {@code null}.
+   * @see FluentArgs
+   */
+  @Nonnull
+  public static FormatRequest of(@Nonnull String id, @Nonnull Map<String, ? extends FluentValue> arguments) {
+    return new FormatRequest(notNull(id, "Message id"), notNull(arguments, "Arguments"));
+  }
+
+  @Nonnull
+  public String getId() {
+    return id;
+  }
+
+  @Nonnull
+  public Map<String, ? extends FluentValue> getArguments() {
+    return arguments;
+  }
+}
@@ -0,0 +1,76 @@
+package io.github.javidaloca;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The outcome of formatting a single message of a {@link FluentBundle#formatMessages(List) batch}.
+ *
+ * @author Johnny_JayJay (https://www.github.com/JohnnyJayJay)
+ */
+public final class FormatResult {
+
+  private final String id;
+  private final Status status;
+  private final String value;
+  private final List<String> errors;
+
+  FormatResult(String id, String value, String[] errors) {
+    this.id = id;
+    this.value = value;
+    this.errors = errors == null ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(errors));
+    this.status = value != null ? Status.FORMATTED : errors != null ? Status.FAILED : Status.MISSING;
+  }
+
+  @Nonnull
+  public String getId() {
+    return id;
+  }
+
+  @Nonnull
+  public Status getStatus() {
+    return status;
+  }
+
+  /**
+   * Returns the formatted message.
+   *
+   * @return An Optional containing the formatted message or an empty Optional if the status
+   *         is not {@link Status#FORMATTED}.
+   */
+  @Nonnull
+  public Optional<String> getValue() {
+    return Optional.ofNullable(value);
+  }
+
+  /**
+   * Returns the errors that occurred while formatting the message.
+   *
+   * @return An unmodifiable list of error descriptions, empty unless the status is {@link Status#FAILED}.
+   */
+  @Nonnull
+  public List<String> getErrors() {
+    return errors;
+  }
+
+  /**
+   * Returns the formatted message, failing the same way {@link FluentBundle#formatMessage(String, java.util.Map)} would.
+   *
+   * @return An Optional containing the formatted message or an empty Optional if the message does not exist.
+   * @throws MessageFormatException If the message could not be formatted.
+   */
+  @Nonnull
+  public Optional<String> getValueOrThrow() {
+    if (status == Status.FAILED) {
+      throw new MessageFormatException(id, errors);
+    }
+    return getValue();
+  }
+
+  public enum Status {
+    FORMATTED, MISSING, FAILED
+  }
+}
@@ -0,0 +1,72 @@
+package io.github.javidaloca;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static io.github.javidaloca.Checks.notNull;
+
+/**
+ * The formatted value and attributes of a message.
+ *
+ * @see FluentBundle#formatMessageWithAttributes(String, Map)
+ * @author Johnny_JayJay (https://www.github.com/JohnnyJayJay)
+ */
+public final class FormattedMessage {
+
+  private final String id;
+  private final String value;
+  private final Map<String, String> attributes;
+
+  // values is laid out as [value, name, value, name, value, ...]
+  FormattedMessage(String id, String[] values) {
+    this.id = id;
+    this.value = values[0];
+    Map<String, String> attributes = new HashMap<>();
+    for (int i = 1; i < values.length; i += 2) {
+      attributes.put(values[i], values[i + 1]);
+    }
+    this.attributes = Collections.unmodifiableMap(attributes);
+  }
+
+  @Nonnull
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * Returns the formatted value of the message.
+   *
+   * @return An Optional containing the formatted value or an empty Optional if the message
+   *         only consists of attributes.
+   */
+  @Nonnull
+  public Optional<String> getValue() {
+    return Optional.ofNullable(value);
+  }
+
+  /**
+   * Returns a formatted attribute of the message.
+   *
+   * @param name The name of the attribute.
+   * @return An Optional containing the formatted attribute or an empty Optional if the message
+   *         does not have an attribute with that name.
+   * @throws IllegalArgumentException If the name is {@code null}.
+   */
+  @Nonnull
+  public Optional<String> getAttribute(@Nonnull String name) {
+    return Optional.ofNullable(attributes.get(notNull(name, "Attribute name")));
+  }
+
+  /**
+   * Returns all formatted attributes of the message.
+   *
+   * @return An unmodifiable map of attribute name -> formatted attribute.
+   */
+  @Nonnull
+  public Map<String, String> getAttributes() {
+    return attributes;
+  }
+}
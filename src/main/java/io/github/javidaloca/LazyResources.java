@@ -0,0 +1,217 @@
+package io.github.javidaloca;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The resources of a {@link FluentBundle} that have been {@link FluentBundle#addResourceLazily(ByteBuffer, boolean)
+ * added lazily} and are only parsed and added to the bundle once one of their messages is needed.
+ *
+ * Resources are loaded such that the result is the same as if all of them had been added eagerly in order:
+ * loading a resource first loads all pending resources that were added before it and define the same ids,
+ * and afterwards all resources that define messages or terms it references. Resources that override
+ * something that has already been added or that define something already loaded resources are missing
+ * are loaded right away.
+ *
+ * @author Johnny_JayJay (https://www.github.com/JohnnyJayJay)
+ */
+final class LazyResources {
+
+  private final FluentBundle bundle;
+  // Maps each message and term id to the last resource that defines it. Term ids start with "-".
+  private final Map<String, Resource> index = new ConcurrentHashMap<>();
+  // Guarded by this
+  private final List<Resource> resources = new ArrayList<>();
+  // Ids that were referenced by loaded resources without being defined by a lazy resource, guarded by this
+  private final Set<String> unresolved = new HashSet<>();
+  private volatile int pending;
+
+  LazyResources(FluentBundle bundle) {
+    this.bundle = bundle;
+  }
+
+  /**
+   * Registers a resource without parsing it.
+   *
+   * @throws OverrideException If {@code override} is {@code false} and the resource defines ids that
+   *                           are already defined by the bundle or by other lazy resources. Like when adding
+   *                           the resource eagerly, the rest of the resource is still registered.
+   */
+  synchronized void add(ByteBuffer content, boolean override) {
+    List<String> ids = scanIds(content);
+    Resource resource = new Resource(content, ids, override);
+    resources.add(resource);
+    pending++;
+    List<OverrideException.Override> overrides = new ArrayList<>();
+    Set<String> seen = new HashSet<>();
+    boolean needed = false;
+    for (String id : ids) {
+      boolean defined = isDefined(id);
+      if (!override && (!seen.add(id) || index.containsKey(id) || defined)) {
+        // The existing definition is kept, so lookups must not load this resource
+        boolean term = id.startsWith("-");
+        overrides.add(new OverrideException.Override(term ? "term" : "message", term ? id.substring(1) : id));
+        continue;
+      }
+      index.put(id, resource);
+      // Messages that have already been loaded may use this resource right away
+      needed |= unresolved.remove(id) || (override && defined);
+    }
+    if (needed) {
+      load(resource);
+    }
+    if (!overrides.isEmpty()) {
+      throw new OverrideException(overrides);
+    }
+  }
+
+  private boolean isDefined(String id) {
+    return id.startsWith("-") ? bundle.hasTermRs(id.substring(1)) : bundle.hasMessageRs(id);
+  }
+
+  /**
+   * Makes sure that the resource defining the given message or term id, if any, has been added to the bundle.
+   */
+  void ensureLoaded(String id) {
+    if (pending == 0) {
+      return;
+    }
+    Resource resource = index.get(id);
+    if (resource != null && !resource.loaded) {
+      synchronized (this) {
+        load(resource);
+      }
+    }
+  }
+
+  /**
+   * Adds all pending resources to the bundle, in the order they were registered.
+   */
+  void loadAll() {
+    if (pending == 0) {
+      return;
+    }
+    synchronized (this) {
+      for (Resource resource : resources) {
+        load(resource);
+      }
+    }
+  }
+
+  // Must hold the lock
+  private void load(Resource resource) {
+    if (resource.loaded || resource.loading) {
+      return;
+    }
+    resource.loading = true;
+    try {
+      for (Resource earlier : resources) {
+        if (earlier == resource) {
+          break;
+        }
+        if (!earlier.loaded && !Collections.disjoint(earlier.ids, resource.ids)) {
+          load(earlier);
+        }
+      }
+      String[] references;
+      try (ParsedResource parsed = new ParsedResource(resource.content.duplicate())) {
+        references = parsed.references();
+        try {
+          bundle.addParsed(parsed, resource.override);
+        } catch (OverrideException e) {
+          // Already reported when the resource was registered; the other entries have been added
+        }
+      } catch (ParseException e) {
+        // Reported once, by the method that caused the resource to be loaded; it is dropped afterwards
+        drop(resource);
+        throw e;
+      }
+      resource.loaded = true;
+      pending--;
+      for (String reference : references) {
+        Resource referenced = index.get(reference);
+        if (referenced != null) {
+          load(referenced);
+        } else {
+          unresolved.add(reference);
+        }
+      }
+    } finally {
+      resource.loading = false;
+    }
+  }
+
+  // Must hold the lock
+  private void drop(Resource resource) {
+    resource.loaded = true;
+    pending--;
+    for (String id : resource.ids) {
+      index.remove(id, resource);
+    }
+  }
+
+  // Entries start at the beginning of a line with their id (terms with "-") followed by "=".
+  // Anything else at the beginning of a line is a comment, blank or part of a multiline entry.
+  private static List<String> scanIds(ByteBuffer content) {
+    List<String> ids = new ArrayList<>();
+    int end = content.limit();
+    int i = content.position();
+    while (i < end) {
+      int start = i;
+      if (content.get(i) == '-') {
+        i++;
+      }
+      if (i < end && isIdStart(content.get(i))) {
+        while (i < end && isIdPart(content.get(i))) {
+          i++;
+        }
+        int idEnd = i;
+        while (i < end && content.get(i) == ' ') {
+          i++;
+        }
+        if (i < end && content.get(i) == '=') {
+          byte[] id = new byte[idEnd - start];
+          for (int j = 0; j < id.length; j++) {
+            id[j] = content.get(start + j);
+          }
+          ids.add(new String(id, StandardCharsets.US_ASCII));
+        }
+      }
+      while (i < end && content.get(i) != '\n') {
+        i++;
+      }
+      i++;
+    }
+    return ids;
+  }
+
+  private static boolean isIdStart(byte b) {
+    return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+  }
+
+  private static boolean isIdPart(byte b) {
+    return isIdStart(b) || (b >= '0' && b <= '9') || b == '_' || b == '-';
+  }
+
+  private static final class Resource {
+
+    private final ByteBuffer content;
+    private final Set<String> ids;
+    private final boolean override;
+    private volatile boolean loaded;
+    private boolean loading;
+
+    private Resource(ByteBuffer content, List<String> ids, boolean override) {
+      this.content = content;
+      this.ids = new HashSet<>(ids);
+      this.override = override;
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package io.github.javidaloca;
+
+import java.util.Map;
+
+/**
+ * A message whose value only consists of text and variable references, so that it can be formatted
+ * in Java without calling into Rust. Bundles create templates for such messages when they are added.
+ *
+ * Formatting produces exactly what fluent would produce. For argument values that fluent might format
+ * differently from Java, i.e. anything but strings and integral numbers with the default options,
+ * {@link #format(Map, boolean)} gives up and the message has to be formatted by fluent.
+ *
+ * @author Johnny_JayJay (https://www.github.com/JohnnyJayJay)
+ */
+final class MessageTemplate {
+
+  // Unicode Directionality Isolation characters, see FluentBundle#setUseIsolating
+  private static final char FIRST_STRONG_ISOLATE = '\u2068';
+  private static final char POP_DIRECTIONAL_ISOLATE = '\u2069';
+  // Integral doubles up to this magnitude are formatted the same way as longs
+  private static final double MAX_EXACT_INTEGER = 0x1p53;
+  private static final long NEGATIVE_ZERO = Double.doubleToRawLongBits(-0.0);
+
+  // Text parts are kept as they are, variable parts hold the name of the variable
+  private final String[] parts;
+  private final boolean[] variables;
+  private final int textLength;
+
+  /**
+   * Creates a template from a message exported by the native bundle:
+   * {@code [id, kinds, parts...]}, where {@code kinds} has a {@code 'T'} for each text part and a
+   * {@code 'V'} for each variable part.
+   */
+  MessageTemplate(String[] exported) {
+    String kinds = exported[1];
+    this.parts = new String[kinds.length()];
+    this.variables = new boolean[parts.length];
+    int textLength = 0;
+    for (int i = 0; i < parts.length; i++) {
+      parts[i] = exported[i + 2];
+      variables[i] = kinds.charAt(i) == 'V';
+      if (!variables[i]) {
+        textLength += parts[i].length();
+      }
+    }
+    this.textLength = textLength;
+  }
+
+  /**
+   * Formats this template.
+   *
+   * @return The formatted message or {@code null} if any of the variables is missing or has a value
+   *         that cannot be formatted in Java.
+   */
+  String format(Map<String, ? extends FluentValue> arguments, boolean useIsolating) {
+    if (parts.length == 1 && !variables[0]) {
+      return parts[0];
+    }
+    // Like fluent, a message that consists of a single placeable is not isolated
+    boolean isolate = useIsolating && parts.length > 1;
+    StringBuilder builder = new StringBuilder(textLength + 16 * parts.length);
+    for (int i = 0; i < parts.length; i++) {
+      if (!variables[i]) {
+        builder.append(parts[i]);
+        continue;
+      }
+      String value = arguments instanceof FluentArgs
+          ? ((FluentArgs) arguments).formatValue(parts[i])
+          : formatValue(arguments.get(parts[i]));
+      if (value == null) {
+        return null;
+      }
+      if (isolate) {
+        builder.append(FIRST_STRONG_ISOLATE).append(value).append(POP_DIRECTIONAL_ISOLATE);
+      } else {
+        builder.append(value);
+      }
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Formats a value the way fluent would.
+   *
+   * @return The formatted value or {@code null} if it is {@code null}, closed or cannot be formatted in Java.
+   */
+  static String formatValue(FluentValue value) {
+    if (value == null || value.isClosed()) {
+      return null;
+    } else if (value instanceof FluentString) {
+      return ((FluentString) value).getValue();
+    } else if (value instanceof FluentNumber) {
+      FluentNumber number = (FluentNumber) value;
+      return formatNumber(number.getValue(), number.getOptions());
+    }
+    return null;
+  }
+
+  /**
+   * Formats a number the way fluent would.
+   *
+   * @return The formatted number or {@code null} if it cannot be formatted in Java.
+   */
+  static String formatNumber(double value, FluentNumber.Options options) {
+    // Rust and Java print fractions and huge numbers differently
+    if ((options != FluentNumber.DEFAULT_OPTIONS && !options.equals(FluentNumber.DEFAULT_OPTIONS))
+        || value != Math.rint(value) || Math.abs(value) > MAX_EXACT_INTEGER
+        || Double.doubleToRawLongBits(value) == NEGATIVE_ZERO) {
+      return null;
+    }
+    return Long.toString((long) value);
+  }
+}
@@ -0,0 +1,103 @@
+package io.github.javidaloca;
+
+/**
+ * The way the most frequent native calls, i.e. creating values and formatting single messages, are made.
+ *
+ * JNI is always available. On Java 22 and newer, the library also contains a backend that calls plain C functions
+ * of the native library through the foreign function API ({@code java.lang.foreign}), which is selected automatically
+ * if it can be initialised and JNI otherwise. The system property {@value #PROPERTY} can force either backend
+ * ({@code jni} or {@code panama}; {@code auto} is the default). Both backends work on the same Rust values,
+ * so everything else keeps using JNI.
+ *
+ * @author Johnny_JayJay (https://www.github.com/JohnnyJayJay)
+ */
+abstract class NativeBackend {
+
+  static final String PROPERTY = "javidaloca.backend";
+
+  static final NativeBackend JNI = new Jni();
+
+  private static final String PANAMA_CLASS = "io.github.javidaloca.PanamaBackend";
+
+  /**
+   * Returns the backend that was selected when it was first used.
+   * If the property has an invalid value or forces the Panama backend on a runtime that cannot use it,
+   * the first call throws an {@link ExceptionInInitializerError} and every later one a {@link NoClassDefFoundError}.
+   */
+  static NativeBackend get() {
+    return Selected.BACKEND;
+  }
+
+  /**
+   * Returns the name of this backend, {@code jni} or {@code panama}.
+   */
+  abstract String name();
+
+  abstract void bind(FluentString string, String value);
+
+  abstract void bind(FluentNumber number, double value, FluentNumber.Options options);
+
+  /**
+   * Formats the value of a message in native code.
+   *
+   * @return The message or {@code null} if the message or its value does not exist.
+   * @throws MessageFormatException If the message could not be formatted.
+   */
+  abstract String formatMessage(FluentBundle bundle, String id, FluentArgs arguments);
+
+  // Initialised on first use so that the property can still be set before that
+  private static final class Selected {
+
+    static final NativeBackend BACKEND = select(System.getProperty(PROPERTY, "auto"));
+
+    private static NativeBackend select(String backend) {
+      switch (backend) {
+        case "auto":
+          try {
+            return panama();
+          } catch (IllegalStateException e) {
+            // Older runtime, a jar without the Java 22 part or a platform the Panama backend does not support
+            return JNI;
+          }
+        case "jni":
+          return JNI;
+        case "panama":
+          return panama();
+        default:
+          throw new IllegalStateException("Unknown value for " + PROPERTY + ": " + backend);
+      }
+    }
+
+    private static NativeBackend panama() {
+      try {
+        // Only present in the multi-release part of the jar for Java 22+
+        return (NativeBackend) Class.forName(PANAMA_CLASS).getDeclaredConstructor().newInstance();
+      } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+        throw new IllegalStateException("The Panama backend is not available on this runtime", e);
+      }
+    }
+  }
+
+  private static final class Jni extends NativeBackend {
+
+    @Override
+    String name() {
+      return "jni";
+    }
+
+    @Override
+    void bind(FluentString string, String value) {
+      string.bind(value);
+    }
+
+    @Override
+    void bind(FluentNumber number, double value, FluentNumber.Options options) {
+      number.bind(value, options);
+    }
+
+    @Override
+    String formatMessage(FluentBundle bundle, String id, FluentArgs arguments) {
+      return bundle.formatMessageRs(id, arguments);
+    }
+  }
+}
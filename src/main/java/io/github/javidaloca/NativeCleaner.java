@@ -0,0 +1,103 @@
+package io.github.javidaloca;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Frees the Rust values of {@link RustObject RustObjects} that become unreachable without having been closed.
+ *
+ * This is a minimal version of {@code java.lang.ref.Cleaner}, which is not available on Java 8.
+ * A single daemon thread waits for phantom reachable objects and releases their pointers.
+ *
+ * @author Johnny_JayJay (https://www.github.com/JohnnyJayJay)
+ */
+final class NativeCleaner {
+
+  private static final ReferenceQueue<RustObject> QUEUE = new ReferenceQueue<>();
+  // Keeps the references themselves reachable until they have been cleaned
+  private static final Set<Cleanable> LIVE = ConcurrentHashMap.newKeySet();
+
+  static {
+    Thread thread = new Thread(NativeCleaner::run, "javidaloca-cleaner");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private NativeCleaner() {}
+
+  static Cleanable register(RustObject object, long pointer) {
+    Cleanable cleanable = new Cleanable(object, pointer);
+    LIVE.add(cleanable);
+    return cleanable;
+  }
+
+  /**
+   * Returns the number of Rust values that are currently owned by Java objects and have not been freed yet.
+   */
+  static int liveCount() {
+    return LIVE.size();
+  }
+
+  static boolean isLive(Cleanable cleanable) {
+    return LIVE.contains(cleanable);
+  }
+
+  /**
+   * Returns the number of Rust values that have not been freed yet by the type of the Java objects owning them.
+   * The types are named like in Java source code, e.g. {@code FluentNumber.Options}.
+   */
+  static Map<String, Integer> liveCountsByType() {
+    Map<Class<?>, Integer> counts = new HashMap<>();
+    for (Cleanable cleanable : LIVE) {
+      counts.merge(cleanable.type, 1, Integer::sum);
+    }
+    Map<String, Integer> named = new TreeMap<>();
+    counts.forEach((type, count) -> named.put(name(type), count));
+    return named;
+  }
+
+  private static String name(Class<?> type) {
+    return type.getName().substring(type.getPackage().getName().length() + 1).replace('$', '.');
+  }
+
+  private static void run() {
+    while (true) {
+      try {
+        ((Cleanable) QUEUE.remove()).clean();
+      } catch (InterruptedException ignored) {
+        // There is nobody who could interrupt this thread on purpose
+      }
+    }
+  }
+
+  static final class Cleanable extends PhantomReference<RustObject> {
+
+    // Only named when the counts are requested, so that tracking an object does not allocate any strings
+    private final Class<?> type;
+    private long pointer;
+
+    private Cleanable(RustObject referent, long pointer) {
+      super(referent, QUEUE);
+      // Custom values are implemented by users, all other types are final
+      this.type = referent instanceof FluentCustomValue ? FluentCustomValue.class : referent.getClass();
+      this.pointer = pointer;
+    }
+
+    /**
+     * Frees the Rust value if that has not happened yet. Safe to call any number of times from any thread.
+     */
+    synchronized void clean() {
+      if (pointer != 0) {
+        clear();
+        LIVE.remove(this);
+        RustObject.free(pointer);
+        pointer = 0;
+      }
+    }
+  }
+}
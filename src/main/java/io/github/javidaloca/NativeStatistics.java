@@ -0,0 +1,211 @@
+package io.github.javidaloca;
+
+import javax.annotation.Nonnull;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A snapshot of the native memory used by this library, which is invisible to the JVM's own memory statistics.
+ *
+ * It consists of the number of Rust values that are owned by Java objects and have not been freed yet, by type,
+ * and of the totals of the {@link BundleStatistics statistics} of all bundles that have not been freed yet.
+ * Bundles and values that have become unreachable without being closed are counted until they are freed
+ * after garbage collection.
+ *
+ * The same numbers can be published over JMX using {@link #registerMBean()}.
+ *
+ * @see #snapshot()
+ * @see FluentBundle#getStatistics()
+ * @author Johnny_JayJay (https://www.github.com/JohnnyJayJay)
+ */
+public final class NativeStatistics implements NativeStatisticsMXBean {
+
+  /**
+   * The name under which the statistics are registered with the platform MBean server.
+   */
+  public static final String OBJECT_NAME = "io.github.javidaloca:type=NativeStatistics";
+
+  static {
+    RustObject.ensureLoaded();
+  }
+
+  private final Map<String, Integer> liveObjects;
+  private final long bundleCount;
+  private final long messageCount;
+  private final long termCount;
+  private final long resourceCount;
+  private final long sourceBytes;
+  private final long astBytes;
+
+  // totals is laid out as [bundles, messages, terms, resources, source bytes, AST bytes]
+  private NativeStatistics(Map<String, Integer> liveObjects, long[] totals) {
+    this.liveObjects = Collections.unmodifiableMap(liveObjects);
+    this.bundleCount = totals[0];
+    this.messageCount = totals[1];
+    this.termCount = totals[2];
+    this.resourceCount = totals[3];
+    this.sourceBytes = totals[4];
+    this.astBytes = totals[5];
+  }
+
+  /**
+   * Takes a snapshot of the current native memory usage.
+   *
+   * @return The current statistics.
+   */
+  @Nonnull
+  public static NativeStatistics snapshot() {
+    return new NativeStatistics(NativeCleaner.liveCountsByType(), totalsRs());
+  }
+
+  private static native long[] totalsRs();
+
+  /**
+   * Registers an MBean with the platform MBean server that publishes the current statistics under
+   * the name {@value #OBJECT_NAME}. Does nothing if it has already been registered.
+   *
+   * @return The name of the MBean.
+   * @throws IllegalStateException If the MBean could not be registered.
+   */
+  @Nonnull
+  public static ObjectName registerMBean() {
+    ObjectName name;
+    try {
+      name = new ObjectName(OBJECT_NAME);
+    } catch (MalformedObjectNameException e) {
+      throw new AssertionError(e);
+    }
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(new Live(), name);
+    } catch (InstanceAlreadyExistsException ignored) {
+      // Registered before
+    } catch (JMException e) {
+      throw new IllegalStateException("Could not register MBean " + name, e);
+    }
+    return name;
+  }
+
+  /**
+   * Returns the number of Rust values that have not been freed yet by the type of the Java objects owning them,
+   * e.g. {@code FluentBundle} or {@code FluentNumber.Options}.
+   *
+   * @return An unmodifiable map of type name -> number of values.
+   */
+  @Nonnull
+  @Override
+  public Map<String, Integer> getLiveObjects() {
+    return liveObjects;
+  }
+
+  @Override
+  public int getLiveObjectCount() {
+    return liveObjects.values().stream().mapToInt(Integer::intValue).sum();
+  }
+
+  @Override
+  public long getBundleCount() {
+    return bundleCount;
+  }
+
+  @Override
+  public long getMessageCount() {
+    return messageCount;
+  }
+
+  @Override
+  public long getTermCount() {
+    return termCount;
+  }
+
+  @Override
+  public long getResourceCount() {
+    return resourceCount;
+  }
+
+  @Override
+  public long getSourceBytes() {
+    return sourceBytes;
+  }
+
+  @Override
+  public long getApproximateAstBytes() {
+    return astBytes;
+  }
+
+  /**
+   * Returns the approximate total size of the resources of all bundles in bytes.
+   *
+   * @see BundleStatistics#getApproximateBytes()
+   */
+  @Override
+  public long getApproximateBytes() {
+    return sourceBytes + astBytes;
+  }
+
+  @Override
+  public String toString() {
+    return "NativeStatistics{" +
+        "liveObjects=" + liveObjects +
+        ", bundles=" + bundleCount +
+        ", messages=" + messageCount +
+        ", terms=" + termCount +
+        ", resources=" + resourceCount +
+        ", sourceBytes=" + sourceBytes +
+        ", astBytes=" + astBytes +
+        '}';
+  }
+
+  // Takes a new snapshot whenever an attribute is read
+  private static final class Live implements NativeStatisticsMXBean {
+
+    @Override
+    public Map<String, Integer> getLiveObjects() {
+      return snapshot().getLiveObjects();
+    }
+
+    @Override
+    public int getLiveObjectCount() {
+      return snapshot().getLiveObjectCount();
+    }
+
+    @Override
+    public long getBundleCount() {
+      return snapshot().getBundleCount();
+    }
+
+    @Override
+    public long getMessageCount() {
+      return snapshot().getMessageCount();
+    }
+
+    @Override
+    public long getTermCount() {
+      return snapshot().getTermCount();
+    }
+
+    @Override
+    public long getResourceCount() {
+      return snapshot().getResourceCount();
+    }
+
+    @Override
+    public long getSourceBytes() {
+      return snapshot().getSourceBytes();
+    }
+
+    @Override
+    public long getApproximateAstBytes() {
+      return snapshot().getApproximateAstBytes();
+    }
+
+    @Override
+    public long getApproximateBytes() {
+      return snapshot().getApproximateBytes();
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package io.github.javidaloca;
+
+import java.util.Map;
+
+/**
+ * The management interface through which {@link NativeStatistics} are published over JMX.
+ * Every attribute reflects the state at the time it is read.
+ *
+ * @see NativeStatistics#registerMBean()
+ * @author Johnny_JayJay (https://www.github.com/JohnnyJayJay)
+ */
+public interface NativeStatisticsMXBean {
+
+  Map<String, Integer> getLiveObjects();
+
+  int getLiveObjectCount();
+
+  long getBundleCount();
+
+  long getMessageCount();
+
+  long getTermCount();
+
+  long getResourceCount();
+
+  long getSourceBytes();
+
+  long getApproximateAstBytes();
+
+  long getApproximateBytes();
+}
@@ -0,0 +1,44 @@
+package io.github.javidaloca;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A resource that has been parsed independently of any bundle, so that parsing can happen
+ * on other threads than adding it to a bundle.
+ *
+ * Can be added to one bundle once.
+ *
+ * @see FluentBundle#addResources(java.util.Collection, boolean)
+ * @author Johnny_JayJay (https://www.github.com/JohnnyJayJay)
+ */
+final class ParsedResource extends RustObject {
+
+  /**
+   * Parses the remaining bytes of the given buffer as UTF-8 encoded FTL.
+   *
+   * @throws ParseException If the content of the buffer is invalid FTL.
+   */
+  ParsedResource(ByteBuffer resource) {
+    if (resource.isDirect()) {
+      bindBuffer(resource, resource.position(), resource.remaining());
+    } else {
+      bindArray(resource.array(), resource.arrayOffset() + resource.position(), resource.remaining());
+    }
+    track();
+  }
+
+  private native void bindArray(byte[] resource, int offset, int length);
+
+  private native void bindBuffer(ByteBuffer resource, int position, int remaining);
+
+  /**
+   * Returns the ids of all messages and terms that are referenced by this resource.
+   * Term ids are prefixed with {@code -}, like in FTL.
+   */
+  String[] references() {
+    checkOpen();
+    return referencesRs();
+  }
+
+  private native String[] referencesRs();
+}
@@ -0,0 +1,364 @@
+package io.github.javidaloca;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static io.github.javidaloca.Checks.check;
+import static io.github.javidaloca.Checks.checkState;
+import static io.github.javidaloca.Checks.notNull;
+
+/**
+ * A bundle that is built from the {@code .ftl} files in a set of directories and rebuilt whenever they change.
+ *
+ * Changes are detected with a {@code WatchService} and debounced, so that a burst of changes only causes one rebuild.
+ * Each rebuild creates a completely new {@link FluentBundle} on a background thread while the current one keeps
+ * serving, and then replaces it atomically. Threads that are formatting messages are never blocked by a rebuild;
+ * the previous bundle is closed as soon as the last of them is done with it.
+ * If a rebuild fails (e.g. because a file contains a syntax error), the previous bundle stays in use.
+ *
+ * The files are added in the order of the directories and, within each directory, in the order of their names.
+ *
+ * This class is thread safe.
+ *
+ * @see #builder()
+ * @author Johnny_JayJay (https://www.github.com/JohnnyJayJay)
+ */
+public final class ReloadingFluentBundle implements AutoCloseable {
+
+  private final List<Locale> locales;
+  private final List<Path> directories;
+  private final Consumer<FluentBundle> configurator;
+  private final Consumer<Exception> failureListener;
+  private final Duration debounce;
+  private final AtomicReference<Version> current = new AtomicReference<>();
+  private final WatchService watchService;
+  private final ScheduledExecutorService scheduler;
+  // Serialises rebuilds, which may take a while
+  private final Object reloadLock = new Object();
+  // Guarded by this
+  private ScheduledFuture<?> scheduledReload;
+
+  private ReloadingFluentBundle(Builder builder) throws IOException {
+    this.locales = builder.locales;
+    this.directories = new ArrayList<>(builder.directories);
+    this.configurator = builder.configurator;
+    this.failureListener = builder.failureListener;
+    this.debounce = builder.debounce;
+    current.set(new Version(build()));
+    this.watchService = FileSystems.getDefault().newWatchService();
+    try {
+      for (Path directory : directories) {
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+      }
+    } catch (IOException e) {
+      watchService.close();
+      current.get().release();
+      throw e;
+    }
+    this.scheduler = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+      Thread thread = new Thread(runnable, "javidaloca-reload");
+      thread.setDaemon(true);
+      return thread;
+    });
+    Thread watcher = new Thread(this::watch, "javidaloca-watcher");
+    watcher.setDaemon(true);
+    watcher.start();
+  }
+
+  @Nonnull
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Runs an action with the current bundle. The bundle will not be closed until the action has completed,
+   * even if it is replaced in the meantime. It must not be used after the action has completed.
+   *
+   * @param action The action to run.
+   * @param <T> The type of the result of the action.
+   * @return The result of the action.
+   * @throws IllegalArgumentException If the action is {@code null}.
+   * @throws IllegalStateException If this bundle has been closed.
+   */
+  public <T> T withBundle(@Nonnull Function<FluentBundle, T> action) {
+    notNull(action, "Action");
+    Version version = acquire();
+    try {
+      return action.apply(version.bundle);
+    } finally {
+      version.release();
+    }
+  }
+
+  /**
+   * Formats a message from the current bundle.
+   *
+   * @see FluentBundle#formatMessage(String, Map)
+   * @throws IllegalStateException If this bundle or the arguments have been closed.
+   */
+  @Nonnull
+  public Optional<String> formatMessage(@Nonnull String id, @Nonnull Map<String, ? extends FluentValue> arguments) {
+    return withBundle((bundle) -> bundle.formatMessage(id, arguments));
+  }
+
+  /**
+   * Formats several messages from the current bundle at once. All messages are formatted by the same bundle.
+   *
+   * @see FluentBundle#formatMessages(List)
+   * @throws IllegalStateException If this bundle or any of the arguments have been closed.
+   */
+  @Nonnull
+  public List<FormatResult> formatMessages(@Nonnull List<FormatRequest> requests) {
+    return withBundle((bundle) -> bundle.formatMessages(requests));
+  }
+
+  /**
+   * Returns whether the current bundle contains a message with the given id.
+   *
+   * @see FluentBundle#hasMessage(String)
+   * @throws IllegalStateException If this bundle has been closed.
+   */
+  public boolean hasMessage(@Nonnull String id) {
+    return withBundle((bundle) -> bundle.hasMessage(id));
+  }
+
+  /**
+   * Rebuilds the bundle right away, on the calling thread. Rebuilds normally happen automatically.
+   *
+   * @throws IOException If an I/O problem with the files occurs.
+   * @throws ParseException If a file is invalid FTL.
+   * @throws OverrideException If a message is defined in more than one file.
+   * @throws IllegalStateException If this bundle has been closed.
+   */
+  public void reload() throws IOException {
+    synchronized (reloadLock) {
+      checkState(current.get() != null, "ReloadingFluentBundle has already been closed");
+      Version next = new Version(build());
+      Version previous = current.getAndSet(next);
+      if (previous == null) {
+        // Closed in the meantime
+        current.set(null);
+        next.release();
+      } else {
+        previous.release();
+      }
+    }
+  }
+
+  private FluentBundle build() throws IOException {
+    List<Path> files = new ArrayList<>();
+    for (Path directory : directories) {
+      try (Stream<Path> stream = Files.list(directory)) {
+        files.addAll(stream
+            .filter((path) -> path.getFileName().toString().endsWith(".ftl") && Files.isRegularFile(path))
+            .sorted()
+            .collect(Collectors.toList()));
+      }
+    }
+    FluentBundle bundle = FluentBundle.create(locales);
+    try {
+      configurator.accept(bundle);
+      bundle.addResources(files, false);
+      return bundle;
+    } catch (IOException | RuntimeException e) {
+      bundle.close();
+      throw e;
+    }
+  }
+
+  private Version acquire() {
+    while (true) {
+      Version version = current.get();
+      checkState(version != null, "ReloadingFluentBundle has already been closed");
+      if (version.retain()) {
+        return version;
+      }
+    }
+  }
+
+  private void watch() {
+    try {
+      while (true) {
+        WatchKey key = watchService.take();
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+          relevant |= event.kind() == StandardWatchEventKinds.OVERFLOW
+              || event.context().toString().endsWith(".ftl");
+        }
+        key.reset();
+        if (relevant) {
+          scheduleReload();
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // This bundle has been closed
+    }
+  }
+
+  private synchronized void scheduleReload() {
+    if (scheduler.isShutdown()) {
+      return;
+    }
+    if (scheduledReload != null) {
+      scheduledReload.cancel(false);
+    }
+    scheduledReload = scheduler.schedule(() -> {
+      try {
+        reload();
+      } catch (Exception e) {
+        failureListener.accept(e);
+      }
+    }, debounce.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops watching the directories and closes the current bundle once it is no longer in use.
+   */
+  @Override
+  public void close() {
+    try {
+      watchService.close();
+    } catch (IOException ignored) {
+      // Nothing to be done about it
+    }
+    synchronized (this) {
+      scheduler.shutdownNow();
+      Version version = current.getAndSet(null);
+      if (version != null) {
+        version.release();
+      }
+    }
+  }
+
+  // A bundle and the number of threads that use it, plus one as long as it is the current bundle
+  private static final class Version {
+
+    private final FluentBundle bundle;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private Version(FluentBundle bundle) {
+      this.bundle = bundle;
+    }
+
+    private boolean retain() {
+      int count;
+      do {
+        count = references.get();
+        if (count == 0) {
+          // Already closed, the caller will find the new version
+          return false;
+        }
+      } while (!references.compareAndSet(count, count + 1));
+      return true;
+    }
+
+    private void release() {
+      if (references.decrementAndGet() == 0) {
+        bundle.close();
+      }
+    }
+  }
+
+  public static final class Builder {
+    private List<Locale> locales;
+    private final List<Path> directories = new ArrayList<>();
+    private Consumer<FluentBundle> configurator = (bundle) -> {};
+    private Consumer<Exception> failureListener = (exception) -> {};
+    private Duration debounce = Duration.ofMillis(500);
+
+    private Builder() {}
+
+    /**
+     * Sets the fallback locales of the bundle. Required.
+     */
+    @Nonnull
+    public Builder locales(@Nonnull Locale... locales) {
+      notNull(locales, "Locale array");
+      check(locales.length > 0, "Must provide at least one locale");
+      check(Arrays.stream(locales).noneMatch(Objects::isNull), "No locale in the array may be null");
+      this.locales = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(locales)));
+      return this;
+    }
+
+    /**
+     * Adds a directory whose {@code .ftl} files make up the bundle. Subdirectories are not included.
+     */
+    @Nonnull
+    public Builder directory(@Nonnull Path directory) {
+      directories.add(notNull(directory, "Directory"));
+      return this;
+    }
+
+    /**
+     * Sets an action that is run on every new bundle before its resources are added,
+     * e.g. to {@link FluentBundle#setUseIsolating(boolean) disable isolation} or to set a {@link FormatCache}.
+     */
+    @Nonnull
+    public Builder configure(@Nonnull Consumer<FluentBundle> configurator) {
+      this.configurator = notNull(configurator, "Configurator");
+      return this;
+    }
+
+    /**
+     * Sets a listener that is notified when an automatic rebuild fails. Failures are ignored by default.
+     */
+    @Nonnull
+    public Builder onReloadFailure(@Nonnull Consumer<Exception> failureListener) {
+      this.failureListener = notNull(failureListener, "Failure listener");
+      return this;
+    }
+
+    /**
+     * Sets how long to wait for further changes before rebuilding. Defaults to 500 milliseconds.
+     */
+    @Nonnull
+    public Builder debounce(@Nonnull Duration debounce) {
+      check(!notNull(debounce, "Debounce").isNegative(), "Debounce must not be negative");
+      this.debounce = debounce;
+      return this;
+    }
+
+    /**
+     * Builds the initial bundle on the calling thread and starts watching the directories.
+     *
+     * @throws IllegalArgumentException If no locales or no directories have been set.
+     * @throws IOException If an I/O problem with the directories or files occurs.
+     * @throws ParseException If a file is invalid FTL.
+     * @throws OverrideException If a message is defined in more than one file.
+     */
+    @Nonnull
+    public ReloadingFluentBundle build() throws IOException {
+      notNull(locales, "Locales");
+      check(!directories.isEmpty(), "Must provide at least one directory");
+      return new ReloadingFluentBundle(this);
+    }
+  }
+}
@@ -1,20 +1,85 @@
 package io.github.javidaloca;
 
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
 /**
+ * The base class of all Java objects that own a Rust value.
+ *
+ * The Rust value is freed when {@link #close()} is called or, at the latest, some time after
+ * the Java object has become unreachable. Closing is idempotent; using an object after it has been closed
+ * results in an {@link IllegalStateException}. That includes objects that another thread closes after the check
+ * in Java, which native code finds out when it reads the pointer. Only one of several threads closing the same object
+ * at once frees its Rust value. Closing a bundle waits for the native calls that are currently formatting with it,
+ * so it must not be closed by a {@link FluentFunction} it is calling. Other objects must not be closed while another
+ * thread is using them.
+ *
  * @author Johnny_JayJay (https://www.github.com/JohnnyJayJay)
  */
-abstract class RustObject {
+abstract class RustObject implements AutoCloseable {
 
   static {
     System.loadLibrary("fluentbindings");
   }
 
-  private long pointer;
+  /**
+   * Makes sure that the native library has been loaded, for classes that call native code without extending this class.
+   */
+  static void ensureLoaded() {
+    // Loaded by the static initializer
+  }
+
+  private static final AtomicLongFieldUpdater<RustObject> POINTER =
+      AtomicLongFieldUpdater.newUpdater(RustObject.class, "pointer");
+
+  // Also read and written by native code
+  private volatile long pointer;
+  private NativeCleaner.Cleanable cleanable;
+
+  /**
+   * Registers the Rust value that was stored in this object by a native {@code bind()} method
+   * so that it is freed eventually. Must be called once, right after binding.
+   */
+  protected final void track() {
+    cleanable = NativeCleaner.register(this, pointer);
+  }
+
+  /**
+   * Stores a Rust value that was created without a native {@code bind()} method, i.e. by another {@link NativeBackend}.
+   */
+  final void adopt(long pointer) {
+    this.pointer = pointer;
+  }
+
+  final long pointer() {
+    return pointer;
+  }
+
+  final boolean isClosed() {
+    return pointer == 0;
+  }
+
+  /**
+   * Returns whether the Rust value of this object is registered to be freed and has not been freed yet.
+   */
+  final boolean isTracked() {
+    return cleanable != null && NativeCleaner.isLive(cleanable);
+  }
 
-  private native void surrender();
+  final void checkOpen() {
+    if (isClosed()) {
+      throw new IllegalStateException(getClass().getSimpleName() + " has already been closed");
+    }
+  }
 
+  /**
+   * Frees the Rust value owned by this object.
+   */
   @Override
-  protected final void finalize() {
-    surrender();
+  public void close() {
+    if (POINTER.getAndSet(this, 0) != 0 && cleanable != null) {
+      cleanable.clean();
+    }
   }
+
+  static native void free(long pointer);
 }
@@ -0,0 +1,156 @@
+package io.github.javidaloca;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+import java.lang.ref.Reference;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_DOUBLE;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/**
+ * A {@link NativeBackend} that calls the C exports of the native library ({@code javidaloca_*})
+ * through the foreign function API instead of JNI. Rust values are passed as the raw pointers
+ * stored in {@link RustObject}s and strings as UTF-8.
+ *
+ * Only part of the multi-release jar for Java 22 and newer.
+ *
+ * @author Johnny_JayJay (https://www.github.com/JohnnyJayJay)
+ */
+final class PanamaBackend extends NativeBackend {
+
+  // Results of javidaloca_format_message, anything else means it has to be formatted through JNI
+  private static final int MISSING = 0;
+  private static final int FORMATTED = 1;
+  private static final int FAILED = 2;
+  private static final int CLOSED = 4;
+
+  // struct FfiString { uint8_t *pointer; size_t length; }
+  private static final long STRING_SIZE = 16;
+  private static final long STRING_LENGTH_OFFSET = 8;
+
+  private static final MethodHandle STRING_NEW;
+  private static final MethodHandle NUMBER_NEW;
+  private static final MethodHandle FORMAT_MESSAGE;
+  private static final MethodHandle STRING_FREE;
+
+  static {
+    // size_t is passed as a long
+    if (ADDRESS.byteSize() != Long.BYTES) {
+      throw new UnsupportedOperationException("The Panama backend requires a 64 bit platform");
+    }
+    // The library has to be loaded by this class loader to be found by the loader lookup
+    RustObject.ensureLoaded();
+    Linker linker = Linker.nativeLinker();
+    SymbolLookup library = SymbolLookup.loaderLookup();
+    // Creating values is short and never calls back into Java, so it can read Java arrays in place
+    Linker.Option critical = Linker.Option.critical(true);
+    STRING_NEW = linker.downcallHandle(library.find("javidaloca_string_new").orElseThrow(),
+        FunctionDescriptor.of(JAVA_LONG, ADDRESS, JAVA_LONG), critical);
+    NUMBER_NEW = linker.downcallHandle(library.find("javidaloca_number_new").orElseThrow(),
+        FunctionDescriptor.of(JAVA_LONG, JAVA_DOUBLE, JAVA_LONG), critical);
+    // Formatting waits for the bundle's lock, which must not hold up the garbage collector
+    FORMAT_MESSAGE = linker.downcallHandle(library.find("javidaloca_format_message").orElseThrow(),
+        FunctionDescriptor.of(JAVA_INT, JAVA_LONG, ADDRESS, JAVA_LONG, JAVA_LONG, ADDRESS));
+    STRING_FREE = linker.downcallHandle(library.find("javidaloca_string_free").orElseThrow(),
+        FunctionDescriptor.ofVoid(ADDRESS, JAVA_LONG), critical);
+  }
+
+  @Override
+  String name() {
+    return "panama";
+  }
+
+  @Override
+  void bind(FluentString string, String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    try {
+      string.adopt((long) STRING_NEW.invokeExact(MemorySegment.ofArray(bytes), (long) bytes.length));
+    } catch (Throwable t) {
+      throw rethrow(t);
+    }
+  }
+
+  // Objects whose pointers are passed are kept reachable until the call returns, so that they are not freed
+  // by the cleaner in the meantime. JNI calls do that by passing the objects themselves.
+  @Override
+  void bind(FluentNumber number, double value, FluentNumber.Options options) {
+    long pointer;
+    try {
+      pointer = (long) NUMBER_NEW.invokeExact(value, options.pointer());
+    } catch (Throwable t) {
+      throw rethrow(t);
+    } finally {
+      Reference.reachabilityFence(options);
+    }
+    if (pointer == 0) {
+      throw new IllegalStateException("Options have already been closed");
+    }
+    number.adopt(pointer);
+  }
+
+  @Override
+  String formatMessage(FluentBundle bundle, String id, FluentArgs arguments) {
+    byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+    try (Arena arena = Arena.ofConfined()) {
+      MemorySegment result = arena.allocate(STRING_SIZE, Long.BYTES);
+      int status;
+      try {
+        status = (int) FORMAT_MESSAGE.invokeExact(bundle.pointer(), arena.allocateFrom(JAVA_BYTE, idBytes),
+            (long) idBytes.length, arguments.pointer(), result);
+      } catch (Throwable t) {
+        throw rethrow(t);
+      } finally {
+        Reference.reachabilityFence(bundle);
+        Reference.reachabilityFence(arguments);
+      }
+      switch (status) {
+        case MISSING:
+          return null;
+        case FORMATTED:
+          return takeString(result);
+        case FAILED:
+          String errors = takeString(result);
+          throw new MessageFormatException(id,
+              errors.isEmpty() ? Collections.emptyList() : Arrays.asList(errors.split("\n")));
+        case CLOSED:
+          throw new IllegalStateException("Bundle or arguments have already been closed");
+        default:
+          // Java functions or custom values are involved, which may throw
+          return JNI.formatMessage(bundle, id, arguments);
+      }
+    }
+  }
+
+  // Copies a string returned by Rust and frees it
+  private static String takeString(MemorySegment string) {
+    MemorySegment pointer = string.get(ADDRESS, 0);
+    long length = string.get(JAVA_LONG, STRING_LENGTH_OFFSET);
+    try {
+      return new String(pointer.reinterpret(length).toArray(JAVA_BYTE), StandardCharsets.UTF_8);
+    } finally {
+      try {
+        STRING_FREE.invokeExact(pointer, length);
+      } catch (Throwable t) {
+        throw rethrow(t);
+      }
+    }
+  }
+
+  // The native functions do not throw, so this only passes on errors of the JVM
+  private static RuntimeException rethrow(Throwable t) {
+    if (t instanceof Error) {
+      throw (Error) t;
+    }
+    return t instanceof RuntimeException ? (RuntimeException) t : new IllegalStateException(t);
+  }
+}
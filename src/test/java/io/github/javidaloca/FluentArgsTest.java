@@ -0,0 +1,112 @@
+package io.github.javidaloca;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FluentArgsTest {
+
+  private FluentBundle bundle;
+
+  @BeforeEach
+  void setUp() {
+    bundle = FluentBundle.create(Locale.US);
+    bundle.addResource("key = { $one } and { $two }!", false);
+    bundle.setUseIsolating(false);
+  }
+
+  @Test
+  void reuse() {
+    FluentArgs args = FluentArgs.create()
+        .insert("one", "a")
+        .insert("two", "b");
+    assertEquals("a and b!", bundle.formatMessage("key", args).orElse(null));
+    args.clear();
+    assertTrue(args.isEmpty(), "Arguments were not cleared");
+    assertThrows(MessageFormatException.class, () -> bundle.formatMessage("key", args),
+        "Cleared arguments were still used");
+    args.insert("one", "c").insert("two", "d");
+    assertEquals("c and d!", bundle.formatMessage("key", args).orElse(null));
+  }
+
+  @Test
+  void replaceValue() {
+    FluentArgs args = FluentArgs.create()
+        .insert("one", "a")
+        .insert("two", "b")
+        .insert("one", "c");
+    assertEquals(2, args.size());
+    assertEquals("c and b!", bundle.formatMessage("key", args).orElse(null));
+  }
+
+  @Test
+  void valuesAreCopied() {
+    FluentString value = FluentString.of("a");
+    FluentArgs args = FluentArgs.create()
+        .insert("one", value)
+        .insert("two", "b");
+    value.close();
+    assertEquals("a and b!", bundle.formatMessage("key", args).orElse(null),
+        "Closing an inserted value affected the arguments");
+  }
+
+  @Test
+  void otherMaps() {
+    Map<String, FluentValue> map = new HashMap<>();
+    map.put("one", FluentString.of("a"));
+    map.put("two", FluentNumber.of(2));
+    assertEquals("a and 2!", bundle.formatMessage("key", map).orElse(null),
+        "Arguments from other maps were not used");
+    map.put("three", null);
+    assertThrows(IllegalArgumentException.class, () -> bundle.formatMessage("key", map),
+        "Null values were accepted");
+  }
+
+  @Test
+  void closed() {
+    FluentArgs args = FluentArgs.create().insert("one", "a");
+    args.close();
+    assertThrows(IllegalStateException.class, () -> args.insert("two", "b"));
+    assertThrows(IllegalStateException.class, () -> bundle.formatMessage("key", args));
+  }
+
+  @Test
+  void primitiveNumbers() {
+    FluentArgs args = FluentArgs.create()
+        .insert("one", 27.5)
+        .insert("two", 42L);
+    assertEquals("27.5 and 42!", bundle.formatMessage("key", args).orElse(null));
+    FluentValue value = args.get("one");
+    assertTrue(value instanceof FluentNumber, "Primitive number was not visible in the map view");
+    assertEquals(27.5, ((FluentNumber) value).getValue());
+    assertSame(FluentNumber.DEFAULT_OPTIONS, ((FluentNumber) value).getOptions());
+    assertSame(value, args.get("one"), "Map view created a new object on every access");
+  }
+
+  @Test
+  void sharedOptions() {
+    FluentNumber.Options options = FluentNumber.options().minimumFractionDigits(2).build();
+    FluentArgs args = FluentArgs.create()
+        .insert("one", 5, options)
+        .insert("two", FluentNumber.of(1.5, options));
+    assertEquals("5.00 and 1.50!", bundle.formatMessage("key", args).orElse(null),
+        "Number options were not applied");
+    options.close();
+    assertThrows(IllegalStateException.class, () -> FluentNumber.of(1, options));
+  }
+
+  @Test
+  void defaultOptionsStayOpen() {
+    FluentNumber.DEFAULT_OPTIONS.close();
+    FluentArgs args = FluentArgs.create()
+        .insert("one", 5)
+        .insert("two", FluentNumber.of(1.5));
+    assertEquals("5 and 1.5!", bundle.formatMessage("key", args).orElse(null),
+        "Default options were closed");
+  }
+}
@@ -3,9 +3,23 @@ package io.github.javidaloca;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -66,10 +80,279 @@ class FluentBundleTest {
         "Parser did not throw on syntax errors");
   }
 
+  @Test
+  void addResourceBytes() throws IOException {
+    byte[] resource = "bytes = Bytes \u00e4\u00f6\u00fc\n".getBytes(StandardCharsets.UTF_8);
+    bundle.addResource(new ByteArrayInputStream(resource), false);
+    assertEquals("Bytes \u00e4\u00f6\u00fc", bundle.formatMessage("bytes", Collections.emptyMap()).orElse(null));
+    ByteBuffer direct = ByteBuffer.allocateDirect(resource.length);
+    direct.put(resource).flip();
+    bundle.addResource(direct, true);
+    assertEquals(0, direct.position(), "Position of the buffer was changed");
+    assertThrows(ParseException.class,
+        () -> bundle.addResource(ByteBuffer.wrap("no syntax".getBytes(StandardCharsets.UTF_8)), false),
+        "Parser did not throw on syntax errors");
+
+    // Large enough to be memory-mapped
+    StringBuilder large = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      large.append("large-").append(i).append(" = Message number ").append(i).append('\n');
+    }
+    Path file = Files.createTempFile("large", ".ftl");
+    try {
+      Files.write(file, large.toString().getBytes(StandardCharsets.UTF_8));
+      bundle.addResource(file, false);
+      assertEquals("Message number 4999", bundle.formatMessage("large-4999", Collections.emptyMap()).orElse(null));
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Test
+  void addResources() throws IOException {
+    List<Path> files = new ArrayList<>();
+    try {
+      for (int i = 0; i < 8; i++) {
+        Path file = Files.createTempFile("resource", ".ftl");
+        Files.write(file, ("file-" + i + " = File " + i + "\nshared = From " + i).getBytes(StandardCharsets.UTF_8));
+        files.add(file);
+      }
+      bundle.addResources(files, true);
+      assertEquals("File 3", bundle.formatMessage("file-3", Collections.emptyMap()).orElse(null));
+      assertEquals("From 7", bundle.formatMessage("shared", Collections.emptyMap()).orElse(null),
+          "Resources were not added in order");
+
+      OverrideException overrides = assertThrows(OverrideException.class,
+          () -> bundle.addResources(files.subList(0, 2), false));
+      assertEquals(4, overrides.getOverrides().size(), "Not all overrides were reported");
+
+      Files.write(files.get(0), "broken".getBytes(StandardCharsets.UTF_8));
+      Files.write(files.get(1), "also broken".getBytes(StandardCharsets.UTF_8));
+      Files.write(files.get(2), "not-added = Not added".getBytes(StandardCharsets.UTF_8));
+      ParseException parseException = assertThrows(ParseException.class,
+          () -> bundle.addResources(files.subList(0, 3), false));
+      assertEquals(1, parseException.getSuppressed().length, "Not all parse errors were reported");
+      assertFalse(bundle.hasMessage("not-added"), "Resources were added despite a parse error");
+
+      List<Path> missing = Arrays.asList(files.get(3).resolveSibling("missing.ftl"), files.get(0));
+      IOException ioException = assertThrows(IOException.class, () -> bundle.addResources(missing, false));
+      assertEquals(1, ioException.getSuppressed().length, "Parse error after an I/O error was lost");
+      assertTrue(ioException.getSuppressed()[0] instanceof ParseException);
+    } finally {
+      for (Path file : files) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+  @Test
+  void addResourceLazily() {
+    bundle.addResourceLazily(utf8("-brand = Javidaloca\n"), false);
+    bundle.addResourceLazily(utf8("# Comment\nwelcome = Welcome to { -brand }!\n    Enjoy.\n"), false);
+    bundle.addResourceLazily(utf8("other = { welcome }"), false);
+    bundle.addResourceLazily(utf8("broken = {\n"), false);
+    assertThrows(OverrideException.class, () -> bundle.addResourceLazily(utf8("key = Duplicate"), false),
+        "Override was not detected for eagerly added message");
+    assertThrows(OverrideException.class, () -> bundle.addResourceLazily(utf8("-brand = Duplicate"), false),
+        "Override was not detected for lazily added term");
+
+    assertEquals("Welcome to Javidaloca!\nEnjoy.", bundle.formatMessage("other", Collections.emptyMap()).orElse(null),
+        "Referenced resources were not loaded");
+    bundle.addResourceLazily(utf8("welcome = Welcome back!"), true);
+    assertEquals("Welcome back!", bundle.formatMessage("other", Collections.emptyMap()).orElse(null),
+        "Message was not overridden");
+    assertThrows(ParseException.class, () -> bundle.hasMessage("broken"),
+        "Syntax error was not reported when the resource was loaded");
+  }
+
+  @Test
+  void addResourceLazilyWithSyntaxError() {
+    bundle.addResourceLazily(utf8("broken = {\nfine = Fine"), false);
+    assertThrows(ParseException.class, () -> bundle.addResource("other = Other", false),
+        "Syntax error was not reported when the resource was loaded");
+    bundle.addResource("other = Other", false);
+    assertTrue(bundle.hasMessage("other"), "Broken lazy resource blocked adding resources");
+    assertFalse(bundle.hasMessage("fine"), "Broken lazy resource was added partially");
+  }
+
+  @Test
+  void addResourceLazilyWithoutOverride() {
+    String resource = "key = Duplicate\nnew = New\n";
+    assertThrows(OverrideException.class, () -> bundle.addResourceLazily(utf8(resource), false));
+    assertEquals("New", bundle.formatMessage("new", Collections.emptyMap()).orElse(null),
+        "Entries without conflicts were not added");
+    assertThrows(MessageFormatException.class, () -> bundle.formatMessage("key", Collections.emptyMap()),
+        "Existing message was overridden");
+    try (FluentBundle eager = FluentBundle.create(Locale.US)) {
+      eager.addResource("key = { $one } and { $two }!", false);
+      assertThrows(OverrideException.class, () -> eager.addResource(resource, false));
+      assertTrue(eager.hasMessage("new"), "Lazy and eager resources behave differently");
+    }
+  }
+
+  private static ByteBuffer utf8(String resource) {
+    return ByteBuffer.wrap(resource.getBytes(StandardCharsets.UTF_8));
+  }
+
   @Test
   void localeException() {
     assertThrows(InvalidLocaleException.class,
         () -> FluentBundle.create(new Locale("FOO", "BAR")),
         "FluentBundle did not throw for invalid locale");
   }
-}
\ No newline at end of file
+
+  @Test
+  void formatIntoStringBuilder() {
+    StringBuilder builder = new StringBuilder("> ");
+    FluentArgs args = FluentArgs.create()
+        .insert("one", "test")
+        .insert("two", 3.141);
+    assertEquals(15, bundle.formatMessage("key", args, builder));
+    assertEquals("> test and 3.141!", builder.toString());
+    assertEquals(-1, bundle.formatMessage("foo", args, builder), "Absent message was formatted");
+
+    String longValue = String.join("", Collections.nCopies(1000, "\u00e4"));
+    builder.setLength(0);
+    bundle.formatMessage("key", args.insert("one", longValue), builder);
+    assertEquals(longValue + " and 3.141!", builder.toString(), "Long message was not formatted correctly");
+  }
+
+  @Test
+  void formatIntoByteBuffer() {
+    FluentArgs args = FluentArgs.create()
+        .insert("one", "t\u00e4st")
+        .insert("two", 3.141);
+    byte[] expected = "t\u00e4st and 3.141!".getBytes(StandardCharsets.UTF_8);
+    for (ByteBuffer buffer : Arrays.asList(ByteBuffer.allocate(64), ByteBuffer.allocateDirect(64))) {
+      buffer.put((byte) '>');
+      assertEquals(expected.length, bundle.formatMessage("key", args, buffer));
+      assertEquals(1 + expected.length, buffer.position());
+      byte[] written = new byte[expected.length];
+      buffer.flip();
+      buffer.get();
+      buffer.get(written);
+      assertArrayEquals(expected, written);
+    }
+    ByteBuffer small = ByteBuffer.allocateDirect(4);
+    assertThrows(BufferOverflowException.class, () -> bundle.formatMessage("key", args, small));
+    assertEquals(0, small.position(), "Buffer was modified although the message did not fit");
+  }
+
+  @Test
+  void formatMessages() {
+    bundle.addResource("static = Static", false);
+    FluentArgs args = FluentArgs.create()
+        .insert("one", "test")
+        .insert("two", 3.141);
+    List<FormatResult> results = bundle.formatMessages(Arrays.asList(
+        FormatRequest.of("key", args),
+        FormatRequest.of("static"),
+        FormatRequest.of("foo", args),
+        FormatRequest.of("key")
+    ));
+    assertEquals(4, results.size());
+    assertEquals(FormatResult.Status.FORMATTED, results.get(0).getStatus());
+    assertEquals("test and 3.141!", results.get(0).getValue().orElse(null));
+    assertEquals("Static", results.get(1).getValue().orElse(null));
+    assertEquals(FormatResult.Status.MISSING, results.get(2).getStatus());
+    assertEquals(FormatResult.Status.FAILED, results.get(3).getStatus());
+    assertFalse(results.get(3).getErrors().isEmpty(), "Failed result did not contain errors");
+    assertThrows(MessageFormatException.class, results.get(3)::getValueOrThrow);
+  }
+
+  @Test
+  void formatAttributes() {
+    bundle.addResource("login = Log in\n    .title = Log in as { $user }\n    .accesskey = L\n"
+        + "attributes-only =\n    .title = Title\n", false);
+    FluentArgs args = FluentArgs.create().insert("user", "Alice");
+    assertEquals("Log in as Alice", bundle.formatAttribute("login", "title", args).orElse(null));
+    assertFalse(bundle.formatAttribute("login", "foo", args).isPresent(), "Absent attribute was formatted");
+    assertFalse(bundle.formatMessage("attributes-only", args).isPresent(), "Message without value was formatted");
+
+    FormattedMessage login = bundle.formatMessageWithAttributes("login", args).orElse(null);
+    assertNotNull(login, "Message was not formatted although id existed");
+    assertEquals("Log in", login.getValue().orElse(null));
+    assertEquals(2, login.getAttributes().size());
+    assertEquals("L", login.getAttribute("accesskey").orElse(null));
+    FormattedMessage attributesOnly = bundle.formatMessageWithAttributes("attributes-only", args).orElse(null);
+    assertNotNull(attributesOnly);
+    assertFalse(attributesOnly.getValue().isPresent());
+    assertEquals("Title", attributesOnly.getAttribute("title").orElse(null));
+    assertFalse(bundle.formatMessageWithAttributes("foo", args).isPresent());
+    assertThrows(MessageFormatException.class,
+        () -> bundle.formatMessageWithAttributes("login", Collections.emptyMap()));
+  }
+
+  @Test
+  void addFunction() {
+    bundle.addResource("product = { PRODUCT($id, case: \"upper\") } costs { PRICE() }\n"
+        + "broken = { FAIL() }\n", false);
+    bundle.addFunction("PRODUCT", (arguments) -> {
+      String name = "product " + ((Double) arguments.getPositional(0)).intValue();
+      return "upper".equals(arguments.getNamed("case")) ? name.toUpperCase(Locale.ROOT) : name;
+    });
+    bundle.addFunction("PRICE", (arguments) -> 42);
+    bundle.addFunction("FAIL", (arguments) -> {
+      throw new UnsupportedOperationException("Function failed");
+    });
+    FluentArgs args = FluentArgs.create().insert("id", 7);
+    assertEquals("PRODUCT 7 costs 42", bundle.formatMessage("product", args).orElse(null));
+    assertThrows(UnsupportedOperationException.class, () -> bundle.formatMessage("broken", args),
+        "Exception thrown by function was not rethrown");
+    assertEquals("PRODUCT 7 costs 42", bundle.formatMessage("product", args).orElse(null),
+        "Bundle was not usable after a function threw");
+    assertThrows(OverrideException.class, () -> bundle.addFunction("PRICE", (arguments) -> 0));
+  }
+
+  @Test
+  void functionReturningClosedValue() {
+    FluentString closed = FluentString.of("closed");
+    closed.close();
+    bundle.addFunction("CLOSED", (arguments) -> closed);
+    bundle.addResource("closed = { CLOSED() }", false);
+    assertThrows(IllegalStateException.class, () -> bundle.formatMessage("closed", Collections.emptyMap()));
+  }
+
+  @Test
+  void shareFormatters() {
+    String resource = "items = { $count ->\n    [one] One item\n   *[other] { $count } items\n}";
+    List<Locale> locales = Collections.singletonList(Locale.US);
+    try (FluentBundle shared = FluentBundle.create(locales, true);
+         FluentBundle unshared = FluentBundle.create(locales, false)) {
+      for (FluentBundle other : Arrays.asList(bundle, shared, unshared)) {
+        other.addResource(resource, false);
+        assertEquals("One item", other.formatMessage("items", FluentArgs.create().insert("count", 1))
+            .orElse(null), "Plural rules were not applied");
+      }
+    }
+    // The registry only keeps weak references, so the formatters are created again once no bundle uses them
+    try (FluentBundle shared = FluentBundle.create(locales, true)) {
+      shared.addResource(resource, false);
+      assertEquals("\u20682\u2069 items", shared.formatMessage("items", FluentArgs.create().insert("count", 2))
+          .orElse(null));
+    }
+  }
+
+  // Only checks the results; ConcurrentFormatBenchmark measures how well formatting scales
+  @Test
+  void concurrentFormatMessage() throws Exception {
+    int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+    int iterations = 5_000;
+    Callable<Void> task = () -> {
+      try (FluentArgs args = FluentArgs.create().insert("one", "test").insert("two", 3.141)) {
+        for (int i = 0; i < iterations; i++) {
+          assertEquals("test and 3.141!", bundle.formatMessage("key", args).orElse(null));
+        }
+      }
+      return null;
+    };
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      for (Future<Void> future : executor.invokeAll(Collections.nCopies(threads, task))) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
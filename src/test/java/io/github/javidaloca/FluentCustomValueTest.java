@@ -0,0 +1,77 @@
+package io.github.javidaloca;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FluentCustomValueTest {
+
+  private FluentBundle bundle;
+
+  @BeforeEach
+  void setUp() {
+    bundle = FluentBundle.create(Locale.GERMANY);
+    bundle.setUseIsolating(false);
+    bundle.addResource("price = Price: { $price }\n"
+        // The literal keeps this from being formatted in Java
+        + "greeting = Hello { $name }{ \"!\" }\n"
+        + "items = { COUNT($price) ->\n    [one] One euro\n   *[other] Many euros\n}\n", false);
+  }
+
+  @AfterEach
+  void tearDown() {
+    bundle.close();
+  }
+
+  @Test
+  void format() {
+    Money price = new Money(new BigDecimal("12.50"));
+    FluentArgs args = FluentArgs.create()
+        .insert("price", price)
+        .insert("name", "Alice");
+    assertEquals("Price: 12.50 EUR (de-DE)", bundle.formatMessage("price", args).orElse(null));
+    assertEquals(1, price.formatted.get());
+    assertEquals("Hello Alice!", bundle.formatMessage("greeting", args).orElse(null));
+    assertEquals(1, price.formatted.get(), "Value was formatted although the message did not display it");
+  }
+
+  @Test
+  void function() {
+    bundle.addFunction("COUNT", (arguments) -> ((Money) arguments.getPositional(0)).amount);
+    FluentArgs args = FluentArgs.create().insert("price", new Money(BigDecimal.ONE));
+    assertEquals("One euro", bundle.formatMessage("items", args).orElse(null));
+  }
+
+  @Test
+  void exception() {
+    FluentArgs args = FluentArgs.create().insert("price", new FluentCustomValue() {
+      @Override
+      protected String format(Locale locale) {
+        throw new IllegalArgumentException("Cannot format");
+      }
+    });
+    assertThrows(IllegalArgumentException.class, () -> bundle.formatMessage("price", args));
+  }
+
+  private static final class Money extends FluentCustomValue {
+
+    private final BigDecimal amount;
+    private final AtomicInteger formatted = new AtomicInteger();
+
+    private Money(BigDecimal amount) {
+      this.amount = amount;
+    }
+
+    @Override
+    protected String format(Locale locale) {
+      formatted.incrementAndGet();
+      return amount.toPlainString() + " EUR (" + locale.toLanguageTag() + ")";
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package io.github.javidaloca;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FluentLocalizationTest {
+
+  private static final Locale SWISS_GERMAN = new Locale("de", "CH");
+
+  private List<Locale> loaded;
+  private FluentLocalization localization;
+
+  @BeforeEach
+  void setUp() {
+    loaded = Collections.synchronizedList(new ArrayList<>());
+    localization = FluentLocalization.builder()
+        .supportedLocales(SWISS_GERMAN, Locale.GERMAN)
+        .defaultLocale(Locale.ENGLISH)
+        .loader((locale) -> {
+          loaded.add(locale);
+          FluentBundle bundle = FluentBundle.create(locale);
+          if (locale.equals(SWISS_GERMAN)) {
+            bundle.addResource("street = Strasse", false);
+          } else if (locale.equals(Locale.GERMAN)) {
+            bundle.addResource("street = Stra\u00dfe\nhello = Hallo", false);
+          } else {
+            bundle.addResource("street = Street\nhello = Hello\nbye = Bye", false);
+          }
+          return bundle;
+        })
+        .build();
+  }
+
+  @AfterEach
+  void tearDown() {
+    localization.close();
+  }
+
+  @Test
+  void fallbackChain() {
+    assertEquals(Arrays.asList(SWISS_GERMAN, Locale.GERMAN, Locale.ENGLISH),
+        localization.getFallbackChain(SWISS_GERMAN));
+    assertEquals(Arrays.asList(Locale.GERMAN, SWISS_GERMAN, Locale.ENGLISH),
+        localization.getFallbackChain(Locale.GERMANY));
+    assertEquals(Collections.singletonList(Locale.ENGLISH), localization.getFallbackChain(Locale.JAPANESE));
+  }
+
+  @Test
+  void formatMessage() {
+    assertEquals("Strasse", localization.formatMessage(SWISS_GERMAN, "street", Collections.emptyMap()).orElse(null));
+    assertEquals(Collections.singletonList(SWISS_GERMAN), loaded, "Fallback bundles were loaded eagerly");
+    assertEquals("Hallo", localization.formatMessage(SWISS_GERMAN, "hello", Collections.emptyMap()).orElse(null));
+    assertEquals("Bye", localization.formatMessage(SWISS_GERMAN, "bye", Collections.emptyMap()).orElse(null));
+    assertFalse(localization.formatMessage(SWISS_GERMAN, "missing", Collections.emptyMap()).isPresent());
+    assertEquals(3, loaded.size(), "Bundles were loaded more than once");
+  }
+
+  @Test
+  void failedLoad() {
+    FluentLocalization failing = FluentLocalization.builder()
+        .defaultLocale(Locale.ENGLISH)
+        .loader((locale) -> {
+          loaded.add(locale);
+          if (loaded.size() == 1) {
+            throw new IOException("Unavailable");
+          }
+          return FluentBundle.create(locale);
+        })
+        .build();
+    try {
+      assertThrows(UncheckedIOException.class, () -> failing.getBundle(Locale.ENGLISH));
+      assertNotNull(failing.getBundle(Locale.ENGLISH), "Failed load was not tried again");
+    } finally {
+      failing.close();
+    }
+  }
+
+  @Test
+  void closedWhileLoading() {
+    List<FluentBundle> created = new ArrayList<>();
+    FluentLocalization[] closing = new FluentLocalization[1];
+    closing[0] = FluentLocalization.builder()
+        .defaultLocale(Locale.ENGLISH)
+        .loader((locale) -> {
+          FluentBundle bundle = FluentBundle.create(locale);
+          created.add(bundle);
+          closing[0].close();
+          return bundle;
+        })
+        .build();
+    assertThrows(IllegalStateException.class, () -> closing[0].getBundle(Locale.ENGLISH));
+    assertTrue(created.get(0).isClosed(), "Bundle loaded after close() was not closed");
+  }
+
+  @Test
+  void closed() {
+    localization.close();
+    assertThrows(IllegalStateException.class,
+        () -> localization.formatMessage(Locale.ENGLISH, "hello", Collections.emptyMap()));
+  }
+}
@@ -0,0 +1,68 @@
+package io.github.javidaloca;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FluentMessageTest {
+
+  private FluentBundle bundle;
+
+  @BeforeEach
+  void setUp() {
+    bundle = FluentBundle.create(Locale.US);
+    bundle.addResource("key = Hello, { $name }!\n    .title = Greeting\n    .label = Label", false);
+    bundle.addResource("attributes-only =\n    .title = Title", false);
+    bundle.setUseIsolating(false);
+  }
+
+  @Test
+  void absentMessage() {
+    assertFalse(bundle.message("foo").isPresent(), "Handle was created for an absent message");
+  }
+
+  @Test
+  void format() {
+    FluentMessage message = bundle.message("key").orElseThrow(AssertionError::new);
+    FluentArgs args = FluentArgs.create().insert("name", "Johnny");
+    assertEquals("Hello, Johnny!", message.format(args).orElse(null),
+        "Message was not formatted correctly");
+    assertEquals("Hello, Johnny!", message.format(args).orElse(null),
+        "Message was not formatted correctly when reused");
+  }
+
+  @Test
+  void attributes() {
+    FluentMessage message = bundle.message("key").orElseThrow(AssertionError::new);
+    assertTrue(message.hasValue());
+    assertEquals(new HashSet<>(Arrays.asList("title", "label")), message.getAttributeNames());
+
+    FluentMessage attributesOnly = bundle.message("attributes-only").orElseThrow(AssertionError::new);
+    assertFalse(attributesOnly.hasValue());
+    assertFalse(attributesOnly.format(Collections.emptyMap()).isPresent(),
+        "Message without value was formatted");
+  }
+
+  @Test
+  void override() {
+    FluentMessage message = bundle.message("key").orElseThrow(AssertionError::new);
+    bundle.addResource("key = Bye, { $name }!", true);
+    assertEquals("Bye, Johnny!", message.format(FluentArgs.create().insert("name", "Johnny")).orElse(null),
+        "Handle did not pick up the overriding message");
+    assertEquals(Collections.emptySet(), message.getAttributeNames());
+  }
+
+  @Test
+  void closedBundle() {
+    FluentMessage message = bundle.message("key").orElseThrow(AssertionError::new);
+    bundle.close();
+    assertThrows(IllegalStateException.class, message::hasValue,
+        "Handle of a closed bundle could still be used");
+  }
+}
@@ -0,0 +1,72 @@
+package io.github.javidaloca;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FluentSnapshotTest {
+
+  private List<Path> sources;
+  private Path snapshot;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    sources = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      Path source = Files.createTempFile("source", ".ftl");
+      Files.write(source, ("# A comment\nmessage-" + i + " = Message\n  spanning lines " + i + "\n")
+          .getBytes(StandardCharsets.UTF_8));
+      sources.add(source);
+    }
+    snapshot = Files.createTempFile("snapshot", ".ftls");
+    FluentSnapshot.compile(sources, snapshot);
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    for (Path source : sources) {
+      Files.deleteIfExists(source);
+    }
+    Files.deleteIfExists(snapshot);
+  }
+
+  @Test
+  void load() throws IOException {
+    FluentBundle bundle = FluentBundle.create(Locale.US);
+    assertTrue(FluentSnapshot.load(bundle, snapshot, sources, false), "Snapshot was not used");
+    assertEquals("Message\nspanning lines 2", bundle.formatMessage("message-2", Collections.emptyMap()).orElse(null));
+  }
+
+  @Test
+  void fallback() throws IOException {
+    Path source = sources.get(1);
+    Files.write(source, "changed = Changed".getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(source, FileTime.fromMillis(Files.getLastModifiedTime(source).toMillis() + 1000));
+    FluentBundle bundle = FluentBundle.create(Locale.US);
+    assertFalse(FluentSnapshot.load(bundle, snapshot, sources, false), "Stale snapshot was used");
+    assertTrue(bundle.hasMessage("changed"));
+
+    Files.write(snapshot, "garbage".getBytes(StandardCharsets.UTF_8));
+    FluentBundle other = FluentBundle.create(Locale.US);
+    assertFalse(FluentSnapshot.load(other, snapshot, sources, false), "Corrupt snapshot was used");
+    assertTrue(other.hasMessage("message-0"));
+  }
+
+  @Test
+  void invalidSource() throws IOException {
+    Files.write(sources.get(0), "invalid".getBytes(StandardCharsets.UTF_8));
+    assertThrows(ParseException.class, () -> FluentSnapshot.compile(sources, snapshot));
+  }
+}
@@ -0,0 +1,115 @@
+package io.github.javidaloca;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FormatCacheTest {
+
+  private FluentBundle bundle;
+  private FormatCache cache;
+
+  @BeforeEach
+  void setUp() {
+    bundle = FluentBundle.create(Locale.US);
+    // The term reference keeps the message from being formatted in Java, which bypasses the cache
+    bundle.addResource("-hello = Hello\nhello = { -hello }, { $name }!", false);
+    bundle.setUseIsolating(false);
+    cache = FormatCache.builder().maximumSize(64).build();
+    bundle.setFormatCache(cache);
+  }
+
+  @Test
+  void hitsAndMisses() {
+    FluentArgs args = FluentArgs.create().insert("name", "Anna");
+    assertEquals("Hello, Anna!", bundle.formatMessage("hello", args).orElse(null));
+    assertEquals("Hello, Anna!", bundle.formatMessage("hello", args).orElse(null));
+    assertEquals(1, cache.getMissCount());
+    assertEquals(1, cache.getHitCount());
+    args.clear();
+    args.insert("name", "Bob");
+    assertEquals("Hello, Bob!", bundle.formatMessage("hello", args).orElse(null),
+        "Cached result was returned for different arguments");
+    assertFalse(bundle.formatMessage("missing", Collections.emptyMap()).isPresent());
+    assertFalse(bundle.formatMessage("missing", Collections.emptyMap()).isPresent());
+    assertEquals(2, cache.getHitCount());
+  }
+
+  @Test
+  void invalidatedOnChange() {
+    FluentArgs args = FluentArgs.create().insert("name", "Anna");
+    bundle.formatMessage("hello", args);
+    bundle.addResource("-hello = Hi\nhello = { -hello }, { $name }!", true);
+    assertEquals("Hi, Anna!", bundle.formatMessage("hello", args).orElse(null),
+        "Cache was not invalidated after overriding a message");
+    bundle.setUseIsolating(true);
+    assertTrue(bundle.formatMessage("hello", args).orElse("").contains("\u2068Anna\u2069"),
+        "Cache was not invalidated after changing isolation");
+  }
+
+  @Test
+  void bypassedWithFunctions() {
+    long[] calls = new long[1];
+    bundle.addFunction("CALLS", (arguments) -> ++calls[0]);
+    bundle.addResource("calls = { CALLS() }", false);
+    FluentArgs args = FluentArgs.create();
+    assertEquals("1", bundle.formatMessage("calls", args).orElse(null));
+    assertEquals("2", bundle.formatMessage("calls", args).orElse(null), "Result of a function was cached");
+    assertEquals(0, cache.getHitCount());
+  }
+
+  @Test
+  void eviction() {
+    FluentArgs args = FluentArgs.create();
+    for (int i = 0; i < 1000; i++) {
+      args.insert("name", i);
+      bundle.formatMessage("hello", args);
+    }
+    assertTrue(cache.size() <= 64, "Cache exceeded its maximum size");
+    assertTrue(cache.getEvictionCount() > 0, "Nothing was evicted");
+  }
+
+  @Test
+  void limitsApplyToWholeCache() {
+    FluentBundle small = FluentBundle.create(Locale.US);
+    small.addResource("-hello = Hello\nhello = { -hello }, { $name }!", false);
+    small.setUseIsolating(false);
+    FormatCache single = FormatCache.builder().maximumSize(1).build();
+    small.setFormatCache(single);
+    FluentArgs args = FluentArgs.create();
+    for (int i = 0; i < 100; i++) {
+      args.insert("name", i);
+      small.formatMessage("hello", args);
+      assertEquals(1, single.size(), "Cache did not hold exactly its maximum size");
+    }
+    assertEquals(99, single.getEvictionCount());
+
+    FormatCache light = FormatCache.builder().maximumWeight(40).build();
+    bundle.setFormatCache(light);
+    for (int i = 0; i < 100; i++) {
+      args.insert("name", i);
+      bundle.formatMessage("hello", args);
+      assertTrue(light.size() <= 4, "Cache exceeded its maximum weight");
+    }
+    small.close();
+  }
+
+  @Test
+  void bypassedForTemplates() {
+    bundle.addResource("bye = Bye, { $name }!", false);
+    FluentArgs args = FluentArgs.create().insert("name", "Anna");
+    assertEquals("Bye, Anna!", bundle.formatMessage("bye", args).orElse(null));
+    assertEquals("Bye, Anna!", bundle.formatMessage("bye", args).orElse(null));
+    assertEquals(0, cache.getMissCount() + cache.getHitCount(), "Message formatted in Java used the cache");
+  }
+
+  @Test
+  void attachedOnce() {
+    FluentBundle other = FluentBundle.create(Locale.US);
+    assertThrows(IllegalArgumentException.class, () -> other.setFormatCache(cache));
+  }
+}
@@ -0,0 +1,136 @@
+package io.github.javidaloca;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FormatMetricsTest {
+
+  private FluentBundle bundle;
+  private FormatMetrics metrics;
+
+  @BeforeEach
+  void setUp() {
+    bundle = FluentBundle.create(Locale.US);
+    metrics = new FormatMetrics();
+    bundle.setInstrumentation(metrics);
+    bundle.addResource("hello = Hello, { $name }!\n"
+        + "items = { $count ->\n    [one] One item\n   *[other] { $count } items\n}\n"
+        + "    .title = Items\n", false);
+  }
+
+  @AfterEach
+  void tearDown() {
+    bundle.close();
+  }
+
+  @Test
+  void latencies() {
+    FluentArgs args = FluentArgs.create().insert("name", "Anna").insert("count", 3);
+    for (int i = 0; i < 10; i++) {
+      bundle.formatMessage("hello", args);
+    }
+    bundle.formatAttribute("items", "title", args);
+    assertEquals(11, metrics.getFormatLatency().getCount());
+    assertEquals(10L, (long) metrics.getFormatLatency("hello").map(FormatMetrics.LatencyHistogram::getCount).orElse(0L));
+    assertFalse(metrics.getFormatLatency("bye").isPresent(), "Latency was recorded for an unused message");
+    FormatMetrics.LatencyHistogram latency = metrics.getFormatLatency();
+    assertTrue(latency.getPercentileNanos(50) <= latency.getPercentileNanos(99), "Percentiles are not monotonic");
+    assertTrue(latency.getPercentileNanos(100) >= latency.getTotalNanos() / latency.getCount(),
+        "Maximum is below the mean");
+    assertThrows(IllegalArgumentException.class, () -> latency.getPercentileNanos(101));
+  }
+
+  @Test
+  void nativeCalls() {
+    FluentArgs args = FluentArgs.create().insert("name", "Anna").insert("count", 3);
+    bundle.formatMessage("hello", args);
+    assertEquals(0, metrics.getNativeCallCount(), "Simple message was formatted in native code");
+    bundle.formatMessage("items", args);
+    bundle.formatMessageWithAttributes("items", args);
+    assertEquals(2, metrics.getNativeCallCount());
+  }
+
+  @Test
+  void missingMessages() {
+    assertFalse(bundle.formatMessage("bye", Collections.emptyMap()).isPresent());
+    assertFalse(bundle.formatMessage("bye", Collections.emptyMap()).isPresent());
+    assertFalse(bundle.formatAttribute("items", "label", Collections.emptyMap()).isPresent());
+    assertEquals(Collections.singletonMap("bye", 2L), metrics.getMissingMessages(),
+        "Missing attribute of an existing message was reported as a missing message");
+  }
+
+  @Test
+  void errors() {
+    assertThrows(MessageFormatException.class, () -> bundle.formatMessage("hello", Collections.emptyMap()));
+    assertEquals(Collections.singletonMap("Unresolved reference", 1L), metrics.getErrors());
+  }
+
+  @Test
+  void otherFormatPaths() throws IOException {
+    FluentArgs args = FluentArgs.create().insert("name", "Anna").insert("count", 3);
+    bundle.formatMessage("items", args, new StringBuilder());
+    bundle.formatMessage("items", args, (Appendable) new StringWriter());
+    bundle.formatMessage("items", args, ByteBuffer.allocate(64));
+    bundle.formatMessages(Arrays.asList("items", "bye", "hello"), args);
+    try (FluentMessage message = bundle.message("items").orElseThrow(IllegalStateException::new)) {
+      message.format(args);
+    }
+    assertEquals(5L, (long) metrics.getFormatLatency("items").map(FormatMetrics.LatencyHistogram::getCount).orElse(0L));
+    assertEquals(5, metrics.getNativeCallCount());
+    assertEquals(Collections.singletonMap("bye", 1L), metrics.getMissingMessages());
+    bundle.formatMessages(Collections.singletonList("hello"), Collections.emptyMap());
+    assertEquals(Collections.singletonMap("Unresolved reference", 1L), metrics.getErrors(),
+        "Failure in a batch was not reported");
+  }
+
+  @Test
+  void grownCharBuffer() throws IOException {
+    int[] calls = new int[1];
+    String text = new String(new char[100_000]).replace('\0', 'x');
+    bundle.addFunction("LONG", (arguments) -> {
+      calls[0]++;
+      return text;
+    });
+    bundle.addResource("long = { LONG() }", false);
+    StringWriter writer = new StringWriter();
+    bundle.formatMessage("long", Collections.emptyMap(), (Appendable) writer);
+    assertEquals(text, writer.toString());
+    assertEquals(1, calls[0], "Message was formatted again to grow the buffer");
+    assertEquals(1, metrics.getNativeCallCount());
+  }
+
+  @Test
+  void limitedMessages() {
+    FormatMetrics limited = new FormatMetrics(1);
+    bundle.setInstrumentation(limited);
+    bundle.formatMessage("bye", Collections.emptyMap());
+    bundle.formatMessage("welcome", Collections.emptyMap());
+    bundle.formatMessage("bye", Collections.emptyMap());
+    assertEquals(Collections.singletonMap("bye", 2L), limited.getMissingMessages(), "Missing ids were not limited");
+    assertEquals(3, limited.getMissingMessageCount());
+    assertEquals(3, limited.getFormatLatency().getCount());
+    assertFalse(limited.getFormatLatency("welcome").isPresent(), "Latencies of ids beyond the limit were kept");
+    assertThrows(IllegalArgumentException.class, () -> new FormatMetrics(-1));
+  }
+
+  @Test
+  void resources() {
+    assertEquals(1, metrics.getResourceCount());
+    bundle.addResource("bye = Bye", false);
+    assertEquals(2, metrics.getResourceCount());
+    assertEquals(2, metrics.getResourceLatency().getCount());
+    bundle.setInstrumentation(null);
+    bundle.addResource("welcome = Welcome", false);
+    assertEquals(2, metrics.getResourceCount(), "Removed instrumentation was still notified");
+  }
+}
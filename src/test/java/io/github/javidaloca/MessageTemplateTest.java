@@ -0,0 +1,94 @@
+package io.github.javidaloca;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Compares the Java fast path of formatMessage with fluent's output, which formatMessages always uses
+class MessageTemplateTest {
+
+  private static final List<String> IDS = Arrays.asList(
+      "static", "multiline", "single", "variables", "adjacent", "selector", "term", "reference", "attributes");
+
+  private FluentBundle bundle;
+
+  @BeforeEach
+  void setUp() {
+    bundle = FluentBundle.create(Locale.US);
+    bundle.addResource(
+        "-brand = Javidaloca\n"
+            + "static = Static text\n"
+            + "multiline =\n    First line\n\n    Second line { $name }\n"
+            + "single = { $name }\n"
+            + "variables = { $name } has { $count } new messages.\n"
+            + "adjacent = {$name}{$count}\n"
+            + "selector = { $count ->\n    [one] One\n   *[other] { $count }\n}\n"
+            + "term = Welcome to { -brand }, { $name }\n"
+            + "reference = { static } { $name }\n"
+            + "attributes = { $name }\n    .title = Title\n", false);
+  }
+
+  @AfterEach
+  void tearDown() {
+    bundle.close();
+  }
+
+  @Test
+  void sameAsFluent() {
+    assertSameAsFluent();
+    bundle.setUseIsolating(false);
+    assertSameAsFluent();
+  }
+
+  private void assertSameAsFluent() {
+    List<Map<String, FluentValue>> arguments = Arrays.asList(
+        FluentArgs.create().insert("name", "\u05e9\u05dc\u05d5\u05dd").insert("count", 3),
+        FluentArgs.create().insert("name", "").insert("count", -42L),
+        FluentArgs.create().insert("name", "Bob").insert("count", 1.5),
+        FluentArgs.create().insert("name", "Bob").insert("count", -0.0),
+        FluentArgs.create().insert("name", "Bob").insert("count", 1e20),
+        FluentArgs.create().insert("name", "Bob")
+            .insert("count", 5, FluentNumber.options().minimumFractionDigits(2).build()),
+        map("name", FluentString.of("Carol"), "count", FluentNumber.of(7)),
+        map("name", FluentNumber.of(1), "count", FluentString.of("many"))
+    );
+    for (Map<String, FluentValue> args : arguments) {
+      List<FormatResult> expected = bundle.formatMessages(IDS, args);
+      for (FormatResult result : expected) {
+        if (result.getStatus() == FormatResult.Status.FAILED) {
+          assertThrows(MessageFormatException.class, () -> bundle.formatMessage(result.getId(), args));
+        } else {
+          assertEquals(result.getValue(), bundle.formatMessage(result.getId(), args),
+              "Message " + result.getId() + " was formatted differently with " + args);
+        }
+      }
+    }
+  }
+
+  @Test
+  void override() {
+    FluentArgs args = FluentArgs.create().insert("name", "Bob").insert("count", 2);
+    assertThrows(OverrideException.class, () -> bundle.addResource("static = Other\nnew = New\n", false));
+    assertEquals("Static text", bundle.formatMessage("static", args).orElse(null));
+    assertEquals("New", bundle.formatMessage("new", args).orElse(null));
+
+    bundle.addResource("static = { $count ->\n   *[other] Overridden\n}\nsingle = New { $name }\n", true);
+    assertEquals("Overridden", bundle.formatMessage("static", args).orElse(null));
+    assertEquals("New \u2068Bob\u2069", bundle.formatMessage("single", args).orElse(null));
+  }
+
+  private static Map<String, FluentValue> map(String key1, FluentValue value1, String key2, FluentValue value2) {
+    Map<String, FluentValue> map = new HashMap<>();
+    map.put(key1, value1);
+    map.put(key2, value2);
+    return map;
+  }
+}
@@ -0,0 +1,97 @@
+package io.github.javidaloca;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Compares the selected backend, which is Panama in the testPanama run on Java 22+, with JNI
+class NativeBackendTest {
+
+  private NativeBackend backend;
+  private FluentBundle bundle;
+  private FluentArgs args;
+
+  @BeforeEach
+  void setUp() {
+    backend = NativeBackend.get();
+    bundle = FluentBundle.create(Locale.US);
+    bundle.addResource("items = { $count ->\n    [one] One { $name }\n   *[other] { $count } { $name }s\n}\n"
+        + "broken = { $count ->\n    [one] { $missing }\n   *[other] { $other }\n}\n"
+        + "attributes =\n    .title = Title\n", false);
+    args = FluentArgs.create();
+  }
+
+  @AfterEach
+  void tearDown() {
+    args.close();
+    bundle.close();
+  }
+
+  @Test
+  void selected() {
+    String property = System.getProperty(NativeBackend.PROPERTY, "auto");
+    String expected = property.equals("auto") ? (panamaAvailable() ? "panama" : "jni") : property;
+    assertEquals(expected, backend.name(), "Wrong backend was selected");
+  }
+
+  // The Java 22 classes are only on the class path of the testPanama run
+  private static boolean panamaAvailable() {
+    try {
+      Class.forName("io.github.javidaloca.PanamaBackend", false, NativeBackendTest.class.getClassLoader());
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  @Test
+  void values() {
+    args.insert("count", FluentNumber.of(1))
+        .insert("name", FluentString.of("\u00e4pfel"));
+    assertSameAsJni("items");
+    args.insert("count", FluentNumber.of(1, FluentNumber.options().minimumFractionDigits(1).build()));
+    assertSameAsJni("items");
+  }
+
+  @Test
+  void missing() {
+    assertNull(backend.formatMessage(bundle, "nothing", args));
+    assertNull(backend.formatMessage(bundle, "attributes", args), "Message without value was formatted");
+  }
+
+  @Test
+  void errors() {
+    args.insert("count", 2);
+    MessageFormatException expected = assertThrows(MessageFormatException.class,
+        () -> NativeBackend.JNI.formatMessage(bundle, "broken", args));
+    MessageFormatException actual = assertThrows(MessageFormatException.class,
+        () -> backend.formatMessage(bundle, "broken", args));
+    assertEquals(expected.errors(), actual.errors());
+  }
+
+  @Test
+  void javaCode() {
+    args.insert("count", 2).insert("name", new FluentCustomValue() {
+      @Override
+      protected String format(Locale locale) {
+        return "Apple";
+      }
+    });
+    assertEquals("\u20682\u2069 \u2068Apple\u2069s", backend.formatMessage(bundle, "items", args),
+        "Custom value was not formatted");
+    bundle.addFunction("FAIL", (arguments) -> {
+      throw new IllegalStateException("Failed");
+    });
+    bundle.addResource("call = { FAIL() }", false);
+    assertThrows(IllegalStateException.class, () -> backend.formatMessage(bundle, "call", args),
+        "Exception of a Java function was not thrown");
+  }
+
+  private void assertSameAsJni(String id) {
+    assertEquals(NativeBackend.JNI.formatMessage(bundle, id, args), backend.formatMessage(bundle, id, args));
+  }
+}
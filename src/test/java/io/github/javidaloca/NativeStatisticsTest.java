@@ -0,0 +1,62 @@
+package io.github.javidaloca;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NativeStatisticsTest {
+
+  private static final String RESOURCE = "hello = Hello { $name }\n"
+      + "-brand = Javidaloca\n"
+      + "welcome = Welcome to { -brand }!\n"
+      + "    .title = { $count ->\n        [one] One item\n       *[other] { $count } items\n    }\n";
+
+  @Test
+  void bundleStatistics() {
+    try (FluentBundle bundle = FluentBundle.create(Locale.US)) {
+      assertEquals(0, bundle.getStatistics().getResourceCount());
+      bundle.addResource(RESOURCE, false);
+      bundle.addResource("hello = Hi\nbye = Bye", true);
+      BundleStatistics statistics = bundle.getStatistics();
+      assertEquals(3, statistics.getMessageCount(), "Overridden message was counted twice");
+      assertEquals(1, statistics.getTermCount());
+      assertEquals(2, statistics.getResourceCount());
+      assertEquals(RESOURCE.getBytes(StandardCharsets.UTF_8).length + "hello = Hi\nbye = Bye".length(),
+          statistics.getSourceBytes());
+      assertTrue(statistics.getApproximateAstBytes() > 0, "AST size was not estimated");
+      bundle.close();
+      assertThrows(IllegalStateException.class, bundle::getStatistics);
+    }
+  }
+
+  @Test
+  void totals() {
+    try (FluentBundle bundle = FluentBundle.create(Locale.US);
+         FluentNumber.Options options = FluentNumber.options().build()) {
+      bundle.addResource(RESOURCE, false);
+      NativeStatistics during = NativeStatistics.snapshot();
+      assertTrue(during.getBundleCount() >= 1);
+      assertTrue(during.getLiveObjects().getOrDefault("FluentBundle", 0) >= 1, "Bundle was not counted");
+      assertTrue(during.getLiveObjects().containsKey("FluentNumber.Options"), "Nested type was not named");
+      assertTrue(during.getApproximateBytes() >= bundle.getStatistics().getApproximateBytes());
+    }
+  }
+
+  @Test
+  void registerMBean() throws Exception {
+    ObjectName name = NativeStatistics.registerMBean();
+    assertEquals(name, NativeStatistics.registerMBean(), "Registering twice failed");
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try (FluentBundle bundle = FluentBundle.create(Locale.US)) {
+      bundle.addResource(RESOURCE, false);
+      assertTrue((Long) server.getAttribute(name, "MessageCount") >= 2);
+      assertTrue((Integer) server.getAttribute(name, "LiveObjectCount") >= 1);
+    }
+  }
+}
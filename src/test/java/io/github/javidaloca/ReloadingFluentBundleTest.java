@@ -0,0 +1,102 @@
+package io.github.javidaloca;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReloadingFluentBundleTest {
+
+  private Path directory;
+  private List<Exception> failures;
+  private ReloadingFluentBundle bundle;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    directory = Files.createTempDirectory("ftl");
+    write("a.ftl", "greeting = Hello");
+    write("b.ftl", "farewell = Bye");
+    failures = new CopyOnWriteArrayList<>();
+    bundle = ReloadingFluentBundle.builder()
+        .locales(Locale.US)
+        .directory(directory)
+        .debounce(Duration.ofMillis(50))
+        .onReloadFailure(failures::add)
+        .build();
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    bundle.close();
+    try (java.util.stream.Stream<Path> files = Files.list(directory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(directory);
+  }
+
+  private void write(String file, String content) throws IOException {
+    Files.write(directory.resolve(file), content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private String format(String id) {
+    return bundle.formatMessage(id, Collections.emptyMap()).orElse(null);
+  }
+
+  @Test
+  void reload() throws IOException {
+    assertEquals("Hello", format("greeting"));
+    bundle.withBundle((old) -> {
+      try {
+        write("a.ftl", "greeting = Hi");
+        bundle.reload();
+      } catch (IOException e) {
+        fail(e.toString());
+      }
+      assertEquals("Hello", old.formatMessage("greeting", Collections.emptyMap()).orElse(null),
+          "Bundle was closed while still in use");
+      return null;
+    });
+    assertEquals("Hi", format("greeting"));
+
+    write("b.ftl", "broken");
+    assertThrows(ParseException.class, bundle::reload);
+    assertEquals("Hi", format("greeting"), "Previous bundle was not kept after a failed reload");
+  }
+
+  @Test
+  void watch() throws Exception {
+    write("c.ftl", "added = Added");
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (!bundle.hasMessage("added") && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    assertEquals("Added", format("added"), "Bundle was not reloaded after a change");
+
+    write("c.ftl", "added = { ");
+    deadline = System.currentTimeMillis() + 10_000;
+    while (failures.isEmpty() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    assertFalse(failures.isEmpty(), "Failed reload was not reported");
+    assertEquals("Added", format("added"));
+  }
+
+  @Test
+  void closed() {
+    bundle.close();
+    assertThrows(IllegalStateException.class, () -> format("greeting"));
+  }
+}
@@ -0,0 +1,53 @@
+package io.github.javidaloca;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RustObjectTest {
+
+  @Test
+  void closeFreesWithoutGc() {
+    // The cleaner thread can only ever lower the count, so that is all the upper bounds have to allow for.
+    int before = NativeCleaner.liveCount();
+    for (int i = 0; i < 1000; i++) {
+      int open;
+      try (FluentString string = FluentString.of("value " + i);
+           FluentNumber number = FluentNumber.of(i)) {
+        assertFalse(string.isClosed());
+        assertFalse(number.isClosed());
+        assertTrue(string.isTracked() && number.isTracked(), "Open objects were not tracked");
+        open = NativeCleaner.liveCount();
+      }
+      assertTrue(NativeCleaner.liveCount() <= open - 2, "Closed objects were not freed immediately");
+      assertTrue(NativeCleaner.liveCount() <= before, "Closed objects were not freed immediately");
+    }
+  }
+
+  @Test
+  void closeTwice() {
+    FluentString string = FluentString.of("value");
+    string.close();
+    assertDoesNotThrow(string::close, "Closing a value twice threw");
+    assertTrue(string.isClosed());
+  }
+
+  @Test
+  void useAfterClose() {
+    FluentBundle bundle = FluentBundle.create(Locale.US);
+    bundle.addResource("key = { $value }", false);
+    FluentString string = FluentString.of("value");
+    string.close();
+    assertThrows(IllegalStateException.class,
+        () -> bundle.formatMessage("key", FluentArgs.create().insert("value", string)),
+        "Formatting with a closed value did not throw");
+
+    bundle.close();
+    assertThrows(IllegalStateException.class, () -> bundle.hasMessage("key"),
+        "Closed bundle could still be used");
+    assertThrows(IllegalStateException.class, () -> bundle.addResource("other = value", false),
+        "Closed bundle could still be used");
+  }
+}